@@ -0,0 +1,83 @@
+package com.imolczek.training.spring.springsecuritysample.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.imolczek.training.spring.springsecuritysample.model.Account;
+import com.imolczek.training.spring.springsecuritysample.services.indexed.AccountStore;
+import com.imolczek.training.spring.springsecuritysample.services.indexed.AccountsDataGenerator;
+
+/**
+ * Lookup cost of the indexed account store, for growing numbers of account holders
+ * Each holder has 1 to 5 accounts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AccountStoreBenchmark {
+
+	@Param({ "10000", "1000000" })
+	public int holders;
+
+	private Path file;
+	private AccountStore store;
+	private String[] accountNumbers;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		this.file = Files.createTempFile("accounts", ".csv");
+		long accounts = AccountsDataGenerator.generate(this.file, this.holders, 5, new Random(42));
+		this.store = AccountStore.load(this.file);
+
+		// Account numbers are drawn up front so that formatting them is not measured
+		this.accountNumbers = new String[4096];
+		for (int i = 0; i < this.accountNumbers.length; i++) {
+			this.accountNumbers[i] = String.format("FR%012d", ThreadLocalRandom.current().nextLong(accounts));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.file);
+	}
+
+	private String randomAccountNumber() {
+		return this.accountNumbers[this.next++ & (this.accountNumbers.length - 1)];
+	}
+
+	@Benchmark
+	public boolean ownershipCheck() {
+		String accountNumber = randomAccountNumber();
+		return this.store.isHeldBy(accountNumber, "not-the-holder");
+	}
+
+	@Benchmark
+	public List<Account> holderAccounts() {
+		Account account = this.store.findByNumber(randomAccountNumber());
+		return this.store.findByHolder(account.getAccountHolderId());
+	}
+
+}
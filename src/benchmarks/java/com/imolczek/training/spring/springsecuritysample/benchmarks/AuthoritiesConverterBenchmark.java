@@ -0,0 +1,69 @@
+package com.imolczek.training.spring.springsecuritysample.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import com.imolczek.training.spring.springsecuritysample.config.MyIDPAuthoritiesConverter;
+
+/**
+ * Cost of mapping the roles and scope claims to authorities, depending on the number of
+ * roles and scopes in the token
+ * The uncached variant disables the per-combination cache, which is what a token with
+ * a never seen before combination of claims costs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthoritiesConverterBenchmark {
+
+	@Param({ "2", "10", "50" })
+	public int claimSize;
+
+	private Jwt jwt;
+	private MyIDPAuthoritiesConverter converter;
+	private MyIDPAuthoritiesConverter uncachedConverter;
+
+	@Setup
+	public void setup() {
+		List<String> roles = new ArrayList<>();
+		StringBuilder scope = new StringBuilder("openid");
+		for (int i = 0; i < this.claimSize; i++) {
+			roles.add("role-" + i);
+			scope.append(" scope:").append(i);
+		}
+		TestTokens tokens = TestTokens.rsa();
+		this.jwt = tokens.decoder().decode(tokens.token("subject", roles, scope.toString()));
+		this.converter = new MyIDPAuthoritiesConverter();
+		this.uncachedConverter = new MyIDPAuthoritiesConverter(0, 0);
+	}
+
+	@Benchmark
+	public Collection<GrantedAuthority> convert() {
+		return this.converter.convert(this.jwt);
+	}
+
+	@Benchmark
+	public Collection<GrantedAuthority> convertUncached() {
+		return this.uncachedConverter.convert(this.jwt);
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.imolczek.training.spring.springsecuritysample.benchmarks;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.server.resource.BearerTokenError;
+import org.springframework.security.oauth2.server.resource.BearerTokenErrorCodes;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenAuthenticationEntryPoint;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.DenialExceptionHandler;
+import com.imolczek.training.spring.springsecuritysample.security.PrecomputedBearerTokenEntryPoint;
+
+/**
+ * Cost of a denied request
+ * - 403 for someone else's account: a new exception with its stack trace resolved
+ *   through @ResponseStatus, as WrongAccountHolderException used to be, against the
+ *   shared stackless exception handled by DenialExceptionHandler
+ *   MockMvc does not render error pages: in a servlet container, the sendError of the
+ *   former also costs a second dispatch, measured by the load test instead
+ * - 401 for an invalid token: the default BearerTokenAuthenticationEntryPoint against
+ *   PrecomputedBearerTokenEntryPoint
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DenialPathBenchmark {
+
+	private MockMvc mockMvc;
+	private MockHttpServletRequest request;
+	private OAuth2AuthenticationException invalidToken;
+	private BearerTokenAuthenticationEntryPoint defaultEntryPoint;
+	private PrecomputedBearerTokenEntryPoint precomputedEntryPoint;
+
+	@Setup
+	public void setup() {
+		this.mockMvc = MockMvcBuilders.standaloneSetup(new DenyingController())
+				.setControllerAdvice(new DenialExceptionHandler())
+				.build();
+		this.request = new MockHttpServletRequest("GET", "/sample/api/v1/whoami");
+		// As thrown by JwtAuthenticationProvider
+		BearerTokenError error = new BearerTokenError(BearerTokenErrorCodes.INVALID_TOKEN, HttpStatus.UNAUTHORIZED,
+				"An error occurred while attempting to decode the Jwt: Signed JWT rejected: Invalid signature",
+				"https://tools.ietf.org/html/rfc6750#section-3.1");
+		this.invalidToken = new OAuth2AuthenticationException(error, error.getDescription());
+		this.defaultEntryPoint = new BearerTokenAuthenticationEntryPoint();
+		this.precomputedEntryPoint = new PrecomputedBearerTokenEntryPoint();
+	}
+
+	@Benchmark
+	public int responseStatusDenial() throws Exception {
+		return this.mockMvc.perform(get("/legacy/12349")).andReturn().getResponse().getStatus();
+	}
+
+	@Benchmark
+	public int handledDenial() throws Exception {
+		return this.mockMvc.perform(get("/accounts/12349")).andReturn().getResponse().getStatus();
+	}
+
+	@Benchmark
+	public MockHttpServletResponse defaultUnauthorized() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.defaultEntryPoint.commence(this.request, response, this.invalidToken);
+		return response;
+	}
+
+	@Benchmark
+	public MockHttpServletResponse precomputedUnauthorized() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		this.precomputedEntryPoint.commence(this.request, response, this.invalidToken);
+		return response;
+	}
+
+	/**
+	 * WrongAccountHolderException as it was
+	 */
+	@ResponseStatus(HttpStatus.FORBIDDEN)
+	static class StackTraceDenialException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+
+	@RestController
+	static class DenyingController {
+
+		@GetMapping("/legacy/{accountNumber}")
+		public String legacy(@PathVariable String accountNumber) {
+			throw new StackTraceDenialException();
+		}
+
+		@GetMapping("/accounts/{accountNumber}")
+		public String accounts(@PathVariable String accountNumber) {
+			throw WrongAccountHolderException.INSTANCE;
+		}
+
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.imolczek.training.spring.springsecuritysample.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import com.imolczek.training.spring.springsecuritysample.security.jwt.CachingJwtDecoder;
+
+/**
+ * Cost of decoding and verifying an access token, with and without the verified token cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtDecoderBenchmark {
+
+	@Param({ "RS256", "ES256" })
+	public String algorithm;
+
+	private String token;
+	private JwtDecoder decoder;
+	private JwtDecoder cachingDecoder;
+
+	@Setup
+	public void setup() {
+		TestTokens tokens = TestTokens.of(this.algorithm);
+		this.token = tokens.customerToken("5c2e6c4e-2b1f-4b55-9a43-1f6f1d6b3b1e");
+		this.decoder = tokens.decoder();
+		this.cachingDecoder = new CachingJwtDecoder(tokens.decoder(), 10_000, Duration.ofSeconds(60));
+	}
+
+	@Benchmark
+	public Jwt decodeAndVerify() {
+		return this.decoder.decode(this.token);
+	}
+
+	@Benchmark
+	public Jwt decodeCached() {
+		return this.cachingDecoder.decode(this.token);
+	}
+
+}
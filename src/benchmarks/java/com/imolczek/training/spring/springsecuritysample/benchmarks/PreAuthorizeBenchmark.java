@@ -0,0 +1,77 @@
+package com.imolczek.training.spring.springsecuritysample.benchmarks;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.security.access.expression.ExpressionUtils;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.util.SimpleMethodInvocation;
+
+import com.imolczek.training.spring.springsecuritysample.config.MyIDPAuthoritiesConverter;
+import com.imolczek.training.spring.springsecuritysample.security.method.AuthorityIndex;
+import com.imolczek.training.spring.springsecuritysample.security.method.AuthorizationRule;
+import com.imolczek.training.spring.springsecuritysample.security.method.AuthorizationRuleCompiler;
+
+/**
+ * Cost of evaluating the @PreAuthorize rule of the account listing, through SpEL as
+ * Spring Security does by default, and through the compiled rules
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PreAuthorizeBenchmark {
+
+	private static final String RULE = "hasAuthority('SCOPE_accounts:list') and hasAuthority('ROLE_customer')";
+
+	private Authentication authentication;
+	private MethodInvocation invocation;
+	private DefaultMethodSecurityExpressionHandler expressionHandler;
+	private Expression expression;
+	private AuthorityIndex authorityIndex;
+	private AuthorizationRule rule;
+
+	@Setup
+	public void setup() throws NoSuchMethodException {
+		Jwt jwt = TestTokens.rsa().customerJwt("subject");
+		this.authentication = new JwtAuthenticationToken(jwt, new MyIDPAuthoritiesConverter().convert(jwt));
+		this.invocation = new SimpleMethodInvocation(this, PreAuthorizeBenchmark.class.getMethod("setup"));
+
+		this.expressionHandler = new DefaultMethodSecurityExpressionHandler();
+		this.expression = this.expressionHandler.getExpressionParser().parseExpression(RULE);
+
+		this.authorityIndex = new AuthorityIndex();
+		this.rule = new AuthorizationRuleCompiler(this.authorityIndex).compile(RULE);
+	}
+
+	@Benchmark
+	public boolean spel() {
+		EvaluationContext context = this.expressionHandler.createEvaluationContext(this.authentication, this.invocation);
+		return ExpressionUtils.evaluateAsBoolean(this.expression, context);
+	}
+
+	@Benchmark
+	public boolean compiled() {
+		BitSet granted = this.authorityIndex.toBitSet(this.authentication.getAuthorities());
+		return this.rule.matches(this.authentication, granted);
+	}
+
+}
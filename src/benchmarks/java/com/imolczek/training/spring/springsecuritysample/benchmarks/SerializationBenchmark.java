@@ -0,0 +1,80 @@
+package com.imolczek.training.spring.springsecuritysample.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.Whoami;
+
+/**
+ * Cost of serializing the response bodies to JSON
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+	private ObjectMapper objectMapper;
+	private Whoami whoami;
+	private AccountResource account;
+	private List<AccountResource> accounts;
+
+	@Setup
+	public void setup() {
+		this.objectMapper = new ObjectMapper();
+
+		this.whoami = new Whoami();
+		this.whoami.setFirstName("John");
+		this.whoami.setLastName("Doe");
+		List<String> roles = new ArrayList<>();
+		roles.add("ROLE_customer");
+		roles.add("ROLE_offline_access");
+		roles.add("SCOPE_openid");
+		roles.add("SCOPE_accounts:list");
+		roles.add("SCOPE_accounts:details");
+		this.whoami.setRoles(roles);
+
+		this.account = new AccountResource();
+		this.account.setAccountNumber("FR000000000042");
+
+		this.accounts = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			AccountResource resource = new AccountResource();
+			resource.setAccountNumber(String.format("FR%012d", i));
+			this.accounts.add(resource);
+		}
+	}
+
+	@Benchmark
+	public byte[] whoami() throws JsonProcessingException {
+		return this.objectMapper.writeValueAsBytes(this.whoami);
+	}
+
+	@Benchmark
+	public byte[] accountResource() throws JsonProcessingException {
+		return this.objectMapper.writeValueAsBytes(this.account);
+	}
+
+	@Benchmark
+	public byte[] accountList() throws JsonProcessingException {
+		return this.objectMapper.writeValueAsBytes(this.accounts);
+	}
+
+}
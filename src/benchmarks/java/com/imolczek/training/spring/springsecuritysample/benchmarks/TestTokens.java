@@ -0,0 +1,124 @@
+package com.imolczek.training.spring.springsecuritysample.benchmarks;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+
+/**
+ * Locally generated signing keys and Keycloak-like access tokens, so that benchmarks
+ * and load tests run without an IDP
+ */
+public final class TestTokens {
+
+	public static final String ISSUER = "http://127.0.0.1:8080/auth/realms/master";
+
+	private final JWSAlgorithm algorithm;
+	private final JWK key;
+	private final JWSSigner signer;
+
+	private TestTokens(JWSAlgorithm algorithm, JWK key, JWSSigner signer) {
+		this.algorithm = algorithm;
+		this.key = key;
+		this.signer = signer;
+	}
+
+	public static TestTokens rsa() {
+		try {
+			RSAKey key = new RSAKeyGenerator(2048).keyID("rsa-" + UUID.randomUUID()).generate();
+			return new TestTokens(JWSAlgorithm.RS256, key, new RSASSASigner(key));
+		} catch (JOSEException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static TestTokens ec() {
+		try {
+			ECKey key = new ECKeyGenerator(Curve.P_256).keyID("ec-" + UUID.randomUUID()).generate();
+			return new TestTokens(JWSAlgorithm.ES256, key, new ECDSASigner(key));
+		} catch (JOSEException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static TestTokens of(String algorithm) {
+		return "ES256".equals(algorithm) ? ec() : rsa();
+	}
+
+	/**
+	 * @return The public JWK set, as served by the IDP's certs endpoint
+	 */
+	public JWKSet publicJwkSet() {
+		return new JWKSet(this.key.toPublicJWK());
+	}
+
+	/**
+	 * @return A decoder verifying tokens signed by this key, without any caching
+	 */
+	public NimbusJwtDecoder decoder() {
+		DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+		jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(this.algorithm, new ImmutableJWKSet<>(publicJwkSet())));
+		jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> { });
+		return new NimbusJwtDecoder(jwtProcessor);
+	}
+
+	public String token(String subject, List<String> roles, String scope) {
+		Instant now = Instant.now();
+		JWTClaimsSet claims = new JWTClaimsSet.Builder()
+				.issuer(ISSUER)
+				.subject(subject)
+				.audience("account")
+				.jwtID(UUID.randomUUID().toString())
+				.issueTime(Date.from(now))
+				.expirationTime(Date.from(now.plusSeconds(3600)))
+				.claim("azp", "sample-client")
+				.claim("given_name", "John")
+				.claim("family_name", "Doe")
+				.claim("roles", roles)
+				.claim("scope", scope)
+				.build();
+		try {
+			SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(this.algorithm).keyID(this.key.getKeyID()).build(), claims);
+			jwt.sign(this.signer);
+			return jwt.serialize();
+		} catch (JOSEException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public String customerToken(String subject) {
+		List<String> roles = new ArrayList<>();
+		roles.add("customer");
+		roles.add("offline_access");
+		return token(subject, roles, "openid profile email accounts:list accounts:details");
+	}
+
+	public Jwt customerJwt(String subject) {
+		return decoder().decode(customerToken(subject));
+	}
+
+}
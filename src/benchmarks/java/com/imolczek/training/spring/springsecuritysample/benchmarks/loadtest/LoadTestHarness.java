@@ -0,0 +1,293 @@
+package com.imolczek.training.spring.springsecuritysample.benchmarks.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.imolczek.training.spring.springsecuritysample.SpringSecuritySampleApplication;
+
+/**
+ * End-to-end load test of the resource server
+ * Starts a MockIdentityProvider and the application on a random port (unless --target is
+ * given), then drives the API endpoints with a fixed number of concurrent clients, each
+ * one sending its next request as soon as the previous one completes
+ * Throughput and latency percentiles are printed per endpoint and written as JSON
+ *
+ * Options:
+ * --concurrency=32     number of concurrent clients
+ * --duration=30s       measurement duration
+ * --warmup=10s         warm-up duration, not measured
+ * --subjects=100       number of distinct users, each one with its own token
+ * --endpoints=ping,whoami,accounts,details
+ * --target=URL         load test an already running instance (its JWK set URI must point
+ *                      to the mock IDP printed at startup)
+ * --output=target/loadtest-result.json
+ * Any other --key=value option is passed to the application, e.g.
+ * --sample.security.jwt.cache.enabled=false to compare configurations
+ * Rate limiting is disabled unless --sample.security.rate-limit.enabled=true is given,
+ * since a few subjects driven flat out would mostly measure 429 responses
+ */
+public final class LoadTestHarness {
+
+	private static final String API = "/sample/api/v1";
+
+	private final List<Endpoint> endpoints = new ArrayList<>();
+	private final String[] tokens;
+	private final int concurrency;
+
+	private LoadTestHarness(String baseUrl, List<String> endpointNames, String[] tokens, int concurrency) {
+		for (String name : endpointNames) {
+			this.endpoints.add(new Endpoint(name, baseUrl + API + path(name)));
+		}
+		this.tokens = tokens;
+		this.concurrency = concurrency;
+	}
+
+	private static String path(String endpoint) {
+		switch (endpoint) {
+		case "ping":
+			return "/ping";
+		case "whoami":
+			return "/whoami";
+		case "accounts":
+			return "/accounts";
+		case "details":
+			return "/accounts/12345";
+		default:
+			throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<>();
+		List<String> applicationArgs = new ArrayList<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("=")) {
+				throw new IllegalArgumentException("Expected --key=value, got " + arg);
+			}
+			String key = arg.substring(2, arg.indexOf('='));
+			String value = arg.substring(arg.indexOf('=') + 1);
+			switch (key) {
+			case "concurrency":
+			case "duration":
+			case "warmup":
+			case "subjects":
+			case "endpoints":
+			case "target":
+			case "output":
+				options.put(key, value);
+				break;
+			default:
+				applicationArgs.add(arg);
+			}
+		}
+		int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+		Duration duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "30s"));
+		Duration warmup = DurationStyle.detectAndParse(options.getOrDefault("warmup", "10s"));
+		int subjects = Integer.parseInt(options.getOrDefault("subjects", "100"));
+		List<String> endpointNames = new ArrayList<>();
+		for (String endpoint : options.getOrDefault("endpoints", "ping,whoami,accounts,details").split(",")) {
+			endpointNames.add(endpoint.trim());
+		}
+		Path output = Paths.get(options.getOrDefault("output", "target/loadtest-result.json"));
+
+		try (MockIdentityProvider idp = new MockIdentityProvider()) {
+			System.out.println("Mock IDP JWK set URI: " + idp.jwkSetUri());
+			String[] tokens = new String[subjects];
+			for (int i = 0; i < subjects; i++) {
+				tokens[i] = idp.customerToken(UUID.randomUUID().toString());
+			}
+
+			ConfigurableApplicationContext application = null;
+			String baseUrl = options.get("target");
+			if (baseUrl == null) {
+				applicationArgs.add("--server.port=0");
+				if (applicationArgs.stream().noneMatch(arg -> arg.startsWith("--sample.security.rate-limit.enabled="))) {
+					applicationArgs.add("--sample.security.rate-limit.enabled=false");
+				}
+				applicationArgs.add("--security.oauth2.resourceserver.jwk.jwk-set-uri=" + idp.jwkSetUri());
+				application = new SpringApplicationBuilder(SpringSecuritySampleApplication.class)
+						.run(applicationArgs.toArray(new String[0]));
+				baseUrl = "http://127.0.0.1:" + application.getEnvironment().getProperty("local.server.port");
+			}
+
+			try {
+				LoadTestHarness harness = new LoadTestHarness(baseUrl, endpointNames, tokens, concurrency);
+				System.out.println("Warming up for " + warmup);
+				harness.run(warmup);
+				harness.reset();
+				System.out.println("Measuring for " + duration + " with " + concurrency + " concurrent clients");
+				harness.run(duration);
+				harness.report(duration, applicationArgs, output);
+			} finally {
+				if (application != null) {
+					application.close();
+				}
+			}
+		}
+	}
+
+	private void run(Duration duration) throws InterruptedException {
+		AtomicBoolean running = new AtomicBoolean(true);
+		CountDownLatch done = new CountDownLatch(this.concurrency);
+		for (int i = 0; i < this.concurrency; i++) {
+			int client = i;
+			Thread thread = new Thread(() -> {
+				try {
+					int request = client;
+					while (running.get()) {
+						Endpoint endpoint = this.endpoints.get(request++ % this.endpoints.size());
+						endpoint.call(this.tokens[ThreadLocalRandom.current().nextInt(this.tokens.length)]);
+					}
+				} finally {
+					done.countDown();
+				}
+			}, "load-client-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		Thread.sleep(duration.toMillis());
+		running.set(false);
+		done.await();
+	}
+
+	private void reset() {
+		for (Endpoint endpoint : this.endpoints) {
+			endpoint.reset();
+		}
+	}
+
+	private void report(Duration duration, List<String> applicationArgs, Path output) throws IOException {
+		double seconds = duration.toMillis() / 1000.0;
+		Histogram total = new Histogram(3);
+		long totalErrors = 0;
+		StringBuilder json = new StringBuilder("{\n  \"concurrency\": ").append(this.concurrency)
+				.append(",\n  \"durationSeconds\": ").append(seconds)
+				.append(",\n  \"applicationArgs\": \"").append(String.join(" ", applicationArgs).replace("\"", "\\\""))
+				.append("\",\n  \"endpoints\": {");
+
+		PrintStream out = System.out;
+		out.printf("%n%-10s %10s %8s %12s %10s %10s %10s %10s%n", "endpoint", "requests", "errors", "req/s",
+				"p50 (ms)", "p99 (ms)", "p999 (ms)", "max (ms)");
+		String separator = "\n";
+		for (Endpoint endpoint : this.endpoints) {
+			Histogram histogram = endpoint.recorder.getIntervalHistogram();
+			total.add(histogram);
+			totalErrors += endpoint.errors.sum();
+			print(out, endpoint.name, histogram, endpoint.errors.sum(), seconds);
+			json.append(separator).append("    \"").append(endpoint.name).append("\": ");
+			appendJson(json, histogram, endpoint.errors.sum(), seconds);
+			separator = ",\n";
+		}
+		print(out, "total", total, totalErrors, seconds);
+		json.append("\n  },\n  \"total\": ");
+		appendJson(json, total, totalErrors, seconds);
+		json.append("\n}\n");
+
+		if (output.getParent() != null) {
+			Files.createDirectories(output.getParent());
+		}
+		Files.write(output, json.toString().getBytes(StandardCharsets.UTF_8));
+		out.println("\nResults written to " + output.toAbsolutePath());
+	}
+
+	private static void print(PrintStream out, String name, Histogram histogram, long errors, double seconds) {
+		out.printf("%-10s %10d %8d %12.1f %10.3f %10.3f %10.3f %10.3f%n", name, histogram.getTotalCount(), errors,
+				histogram.getTotalCount() / seconds, millis(histogram.getValueAtPercentile(50)),
+				millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+				millis(histogram.getMaxValue()));
+	}
+
+	private static void appendJson(StringBuilder json, Histogram histogram, long errors, double seconds) {
+		json.append(String.format(Locale.ROOT,
+				"{\"requests\": %d, \"errors\": %d, \"throughput\": %.1f, \"p50Ms\": %.3f, \"p99Ms\": %.3f, \"p999Ms\": %.3f, \"maxMs\": %.3f}",
+				histogram.getTotalCount(), errors, histogram.getTotalCount() / seconds,
+				millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+				millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue())));
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	/**
+	 * One API endpoint, with the latency histogram of its successful calls
+	 */
+	private static final class Endpoint {
+
+		private final String name;
+		private final URL url;
+		private final Recorder recorder = new Recorder(3);
+		private final LongAdder errors = new LongAdder();
+
+		Endpoint(String name, String url) {
+			this.name = name;
+			try {
+				this.url = new URL(url);
+			} catch (IOException e) {
+				throw new IllegalArgumentException(url, e);
+			}
+		}
+
+		void call(String token) {
+			long start = System.nanoTime();
+			try {
+				HttpURLConnection connection = (HttpURLConnection) this.url.openConnection();
+				connection.setRequestProperty("Authorization", "Bearer " + token);
+				connection.setRequestProperty("Accept", "application/json");
+				int status = connection.getResponseCode();
+				// The body must be fully read for the connection to be kept alive
+				try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+					drain(body);
+				}
+				if (status == 200) {
+					this.recorder.recordValue(System.nanoTime() - start);
+				} else {
+					this.errors.increment();
+				}
+			} catch (IOException e) {
+				this.errors.increment();
+			}
+		}
+
+		private void drain(InputStream body) throws IOException {
+			if (body == null) {
+				return;
+			}
+			byte[] chunk = new byte[8192];
+			while (body.read(chunk) >= 0) {
+				// discard
+			}
+		}
+
+		void reset() {
+			this.recorder.reset();
+			this.errors.reset();
+		}
+
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.imolczek.training.spring.springsecuritysample.benchmarks.loadtest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+import com.imolczek.training.spring.springsecuritysample.benchmarks.TestTokens;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal stand-in for Keycloak: serves the JWK set of a locally generated key on the
+ * realm's certs endpoint, and mints access tokens signed with that key
+ */
+public class MockIdentityProvider implements AutoCloseable {
+
+	static final String CERTS_PATH = "/auth/realms/master/protocol/openid-connect/certs";
+
+	private final TestTokens tokens;
+	private final HttpServer server;
+
+	public MockIdentityProvider() throws IOException {
+		this.tokens = TestTokens.rsa();
+		byte[] jwks = this.tokens.publicJwkSet().toString().getBytes(StandardCharsets.UTF_8);
+
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext(CERTS_PATH, exchange -> {
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, jwks.length);
+			try (OutputStream body = exchange.getResponseBody()) {
+				body.write(jwks);
+			}
+		});
+		this.server.setExecutor(Executors.newFixedThreadPool(2));
+		this.server.start();
+	}
+
+	public String jwkSetUri() {
+		return "http://127.0.0.1:" + this.server.getAddress().getPort() + CERTS_PATH;
+	}
+
+	/**
+	 * @param subject The account holder id
+	 * @return An access token with the customer role and the accounts scopes
+	 */
+	public String customerToken(String subject) {
+		return this.tokens.customerToken(subject);
+	}
+
+	@Override
+	public void close() {
+		this.server.stop(0);
+	}
+
+}
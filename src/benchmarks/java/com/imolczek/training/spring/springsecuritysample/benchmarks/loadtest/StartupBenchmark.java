@@ -0,0 +1,164 @@
+package com.imolczek.training.spring.springsecuritysample.benchmarks.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import com.imolczek.training.spring.springsecuritysample.SpringSecuritySampleApplication;
+
+/**
+ * Startup time of the resource server, as seen by an autoscaler
+ * Each iteration starts the application in a fresh JVM, against a MockIdentityProvider,
+ * and measures the time from the process launch to the first successful authenticated
+ * request: the JWK set must have been fetched and the whole request path initialized
+ * The minimum, median and maximum times are printed and written as JSON
+ *
+ * Options:
+ * --iterations=5       number of application starts
+ * --timeout=60s        maximum wait for the first successful request
+ * --output=target/startup-result.json
+ * Any other --key=value option is passed to the application, e.g.
+ * --spring.profiles.active=fast-startup to compare with the default configuration
+ */
+public final class StartupBenchmark {
+
+	private static final String WHOAMI = "/sample/api/v1/whoami";
+
+	private StartupBenchmark() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new LinkedHashMap<>();
+		List<String> applicationArgs = new ArrayList<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("=")) {
+				throw new IllegalArgumentException("Expected --key=value, got " + arg);
+			}
+			String key = arg.substring(2, arg.indexOf('='));
+			String value = arg.substring(arg.indexOf('=') + 1);
+			switch (key) {
+			case "iterations":
+			case "timeout":
+			case "output":
+				options.put(key, value);
+				break;
+			default:
+				applicationArgs.add(arg);
+			}
+		}
+		int iterations = Integer.parseInt(options.getOrDefault("iterations", "5"));
+		Duration timeout = DurationStyle.detectAndParse(options.getOrDefault("timeout", "60s"));
+		Path output = Paths.get(options.getOrDefault("output", "target/startup-result.json"));
+
+		long[] millis = new long[iterations];
+		try (MockIdentityProvider idp = new MockIdentityProvider()) {
+			String token = idp.customerToken(UUID.randomUUID().toString());
+			for (int i = 0; i < iterations; i++) {
+				millis[i] = TimeUnit.NANOSECONDS.toMillis(timeToFirstRequest(idp, token, applicationArgs, timeout));
+				System.out.println("Iteration " + (i + 1) + ": first authenticated request served after " + millis[i] + " ms");
+			}
+		}
+		report(millis, applicationArgs, output);
+	}
+
+	private static long timeToFirstRequest(MockIdentityProvider idp, String token, List<String> applicationArgs,
+			Duration timeout) throws IOException, InterruptedException {
+		int port = freePort();
+		List<String> command = new ArrayList<>(Arrays.asList(
+				Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+				"-cp", System.getProperty("java.class.path"),
+				SpringSecuritySampleApplication.class.getName(),
+				"--server.port=" + port,
+				"--security.oauth2.resourceserver.jwk.jwk-set-uri=" + idp.jwkSetUri()));
+		command.addAll(applicationArgs);
+		URL whoami = new URL("http://127.0.0.1:" + port + WHOAMI);
+
+		long start = System.nanoTime();
+		Process application = new ProcessBuilder(command)
+				.redirectOutput(new File(System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null"))
+				.redirectErrorStream(true)
+				.start();
+		try {
+			long deadline = start + timeout.toNanos();
+			while (System.nanoTime() < deadline) {
+				if (!application.isAlive()) {
+					throw new IllegalStateException("The application exited with status " + application.exitValue());
+				}
+				if (call(whoami, token) == 200) {
+					return System.nanoTime() - start;
+				}
+				Thread.sleep(5);
+			}
+			throw new IllegalStateException("No successful request within " + timeout);
+		} finally {
+			application.destroy();
+			if (!application.waitFor(10, TimeUnit.SECONDS)) {
+				application.destroyForcibly();
+			}
+		}
+	}
+
+	/**
+	 * @return The response status, or -1 while the application does not accept connections
+	 */
+	private static int call(URL url, String token) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(100);
+			connection.setRequestProperty("Authorization", "Bearer " + token);
+			int status = connection.getResponseCode();
+			InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			if (body != null) {
+				body.close();
+			}
+			return status;
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static void report(long[] millis, List<String> applicationArgs, Path output) throws IOException {
+		long[] sorted = millis.clone();
+		Arrays.sort(sorted);
+		long min = sorted[0];
+		long median = sorted[sorted.length / 2];
+		long max = sorted[sorted.length - 1];
+		System.out.printf(Locale.ROOT, "%nTime to first authenticated request: min %d ms, median %d ms, max %d ms%n",
+				min, median, max);
+
+		String json = String.format(Locale.ROOT,
+				"{\n  \"iterations\": %d,\n  \"applicationArgs\": \"%s\",\n  \"timeToFirstRequestMs\": {\"min\": %d, \"median\": %d, \"max\": %d, \"samples\": %s}\n}\n",
+				millis.length, String.join(" ", applicationArgs).replace("\"", "\\\""), min, median, max,
+				Arrays.toString(millis));
+		if (output.getParent() != null) {
+			Files.createDirectories(output.getParent());
+		}
+		Files.write(output, json.getBytes(StandardCharsets.UTF_8));
+		System.out.println("Results written to " + output.toAbsolutePath());
+	}
+
+}
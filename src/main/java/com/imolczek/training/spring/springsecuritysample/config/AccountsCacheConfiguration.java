@@ -0,0 +1,109 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import com.imolczek.training.spring.springsecuritysample.services.AccountChangedEvent;
+import com.imolczek.training.spring.springsecuritysample.services.AccountsService;
+import com.imolczek.training.spring.springsecuritysample.services.CachingAccountsService;
+import com.imolczek.training.spring.springsecuritysample.services.TimedAccountsService;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Read-through cache in front of whichever AccountsService implementation is active,
+ * see CachingAccountsService; disabled with sample.accounts.cache.enabled=false
+ * The cache sits under the TimedAccountsService of MetricsConfiguration, so that the
+ * service timings include the cache hits
+ * @author Fabian Bouché
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "sample.accounts.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class AccountsCacheConfiguration {
+
+	@Bean
+	static AccountsCachePostProcessor accountsCachePostProcessor(ObjectProvider<MeterRegistry> registry,
+			@Value("${sample.accounts.cache.max-holders:10000}") int maxHolders,
+			@Value("${sample.accounts.cache.max-entries-per-holder:1000}") int maxEntriesPerHolder,
+			@Value("${sample.accounts.cache.ttl:30s}") Duration ttl) {
+		return new AccountsCachePostProcessor(registry, maxHolders, maxEntriesPerHolder, ttl);
+	}
+
+	/**
+	 * Wraps the AccountsService beans before any other post-processor, and forwards the
+	 * account changes to the caches it created
+	 */
+	static class AccountsCachePostProcessor implements BeanPostProcessor, Ordered, ApplicationListener<AccountChangedEvent> {
+
+		private final ObjectProvider<MeterRegistry> registry;
+		private final int maxHolders;
+		private final int maxEntriesPerHolder;
+		private final Duration ttl;
+		private final List<CachingAccountsService> caches = new CopyOnWriteArrayList<>();
+
+		AccountsCachePostProcessor(ObjectProvider<MeterRegistry> registry, int maxHolders, int maxEntriesPerHolder,
+				Duration ttl) {
+			this.registry = registry;
+			this.maxHolders = maxHolders;
+			this.maxEntriesPerHolder = maxEntriesPerHolder;
+			this.ttl = ttl;
+		}
+
+		@Override
+		public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+			if (bean instanceof AccountsService && !(bean instanceof CachingAccountsService)
+					&& !(bean instanceof TimedAccountsService)) {
+				CachingAccountsService cache = new CachingAccountsService((AccountsService) bean, this.maxHolders,
+						this.maxEntriesPerHolder, this.ttl);
+				bindMetrics(cache, this.registry.getObject());
+				this.caches.add(cache);
+				return cache;
+			}
+			return bean;
+		}
+
+		@Override
+		public void onApplicationEvent(AccountChangedEvent event) {
+			this.caches.forEach(cache -> cache.invalidate(event));
+		}
+
+		@Override
+		public int getOrder() {
+			return Ordered.HIGHEST_PRECEDENCE;
+		}
+
+		private static void bindMetrics(CachingAccountsService cache, MeterRegistry registry) {
+			FunctionCounter.builder("sample.accounts.cache.requests", cache, CachingAccountsService::getHitCount)
+					.description("Lookups in the accounts cache").tag("result", "hit").register(registry);
+			FunctionCounter.builder("sample.accounts.cache.requests", cache, CachingAccountsService::getMissCount)
+					.description("Lookups in the accounts cache").tag("result", "miss").register(registry);
+			FunctionCounter.builder("sample.accounts.cache.requests", cache, CachingAccountsService::getCoalescedCount)
+					.description("Lookups in the accounts cache").tag("result", "coalesced").register(registry);
+			FunctionCounter.builder("sample.accounts.cache.invalidations", cache, CachingAccountsService::getInvalidationCount)
+					.description("Holders dropped from the accounts cache after an account change").register(registry);
+			FunctionTimer.builder("sample.accounts.cache.loads", cache, CachingAccountsService::getMissCount,
+					CachingAccountsService::getLoadNanos, TimeUnit.NANOSECONDS)
+					.description("Loads of the accounts cache from the accounts service").register(registry);
+			Gauge.builder("sample.accounts.cache.holders", cache, CachingAccountsService::getHolderCount)
+					.description("Holders in the accounts cache").register(registry);
+		}
+
+	}
+
+}
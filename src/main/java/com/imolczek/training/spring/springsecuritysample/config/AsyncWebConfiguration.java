@@ -0,0 +1,53 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.AsyncRequestExecutor;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Async handling of the sample API, enabled with sample.web.async.enabled, see
+ * AsyncSampleController
+ * The account calls run on virtual threads when the JDK supports them, on a pool of
+ * platform threads otherwise; either way their number is bounded
+ * @author Fabian Bouché
+ *
+ */
+@Configuration
+@ConditionalOnWebApplication(type = Type.SERVLET)
+@ConditionalOnProperty(name = "sample.web.async.enabled", havingValue = "true")
+public class AsyncWebConfiguration {
+
+	private static Logger logger = LoggerFactory.getLogger(AsyncWebConfiguration.class);
+
+	@Value("${sample.web.async.max-concurrency:200}") int maxConcurrency;
+	@Value("${sample.web.async.queue-capacity:10000}") int queueCapacity;
+	@Value("${sample.web.async.virtual-threads:true}") boolean virtualThreads;
+
+	@Bean(destroyMethod = "shutdown")
+	AsyncRequestExecutor asyncRequestExecutor(MeterRegistry registry) {
+		AsyncRequestExecutor executor = new AsyncRequestExecutor(this.maxConcurrency, this.queueCapacity, this.virtualThreads);
+		logger.info("Account calls run on {} threads, at most {} at once",
+				executor.isVirtualThreads() ? "virtual" : "platform", this.maxConcurrency);
+		Gauge.builder("sample.web.async.active", executor, AsyncRequestExecutor::getActiveCount)
+				.description("Account calls running").register(registry);
+		Gauge.builder("sample.web.async.queued", executor, AsyncRequestExecutor::getQueueSize)
+				.description("Account calls waiting to run").register(registry);
+		FunctionCounter.builder("sample.web.async.calls", executor, AsyncRequestExecutor::getCompletedCount)
+				.description("Account calls submitted to the executor").tag("outcome", "completed").register(registry);
+		FunctionCounter.builder("sample.web.async.calls", executor, AsyncRequestExecutor::getRejectedCount)
+				.description("Account calls submitted to the executor").tag("outcome", "rejected").register(registry);
+		return executor;
+	}
+
+}
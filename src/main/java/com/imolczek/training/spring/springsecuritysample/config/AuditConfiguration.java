@@ -0,0 +1,70 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.imolczek.training.spring.springsecuritysample.security.audit.AuditInterceptor;
+import com.imolczek.training.spring.springsecuritysample.security.audit.AuditLog;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Audit trail of the access decisions taken on the API, see AuditLog
+ * Each call to a controller is recorded by the AuditInterceptor, and each account denied
+ * within a batch details call by the BatchAuditResponseBodyAdvice
+ * Enabled with sample.audit.enabled, the files being written to sample.audit.directory
+ * @author Fabian Bouché
+ *
+ */
+@Configuration
+@ConditionalOnWebApplication(type = Type.SERVLET)
+@ConditionalOnProperty(name = "sample.audit.enabled", havingValue = "true")
+public class AuditConfiguration {
+
+	@Value("${sample.audit.directory:audit}") String directory;
+	@Value("${sample.audit.buffer-capacity:65536}") int bufferCapacity;
+	@Value("${sample.audit.batch-size:1024}") int batchSize;
+	@Value("${sample.audit.max-file-size:64MB}") DataSize maxFileSize;
+	@Value("${sample.audit.max-history:30}") int maxHistory;
+	@Value("${sample.audit.idle-wait:50ms}") Duration idleWait;
+
+	@Bean
+	AuditLog auditLog(MeterRegistry registry) throws IOException {
+		AuditLog auditLog = new AuditLog(Paths.get(this.directory), this.bufferCapacity, this.batchSize,
+				this.maxFileSize.toBytes(), this.maxHistory, this.idleWait);
+		FunctionCounter.builder("sample.audit.events", auditLog, AuditLog::getWrittenCount)
+				.description("Audit events").tag("outcome", "written").register(registry);
+		FunctionCounter.builder("sample.audit.events", auditLog, AuditLog::getDroppedCount)
+				.description("Audit events").tag("outcome", "dropped").register(registry);
+		Gauge.builder("sample.audit.pending", auditLog, AuditLog::getPendingCount)
+				.description("Audit events waiting to be written").register(registry);
+		auditLog.start();
+		return auditLog;
+	}
+
+	@Bean
+	WebMvcConfigurer auditInterceptorConfigurer(AuditLog auditLog) {
+		return new WebMvcConfigurer() {
+
+			@Override
+			public void addInterceptors(InterceptorRegistry registry) {
+				registry.addInterceptor(new AuditInterceptor(auditLog)).addPathPatterns("/sample/api/**");
+			}
+
+		};
+	}
+
+}
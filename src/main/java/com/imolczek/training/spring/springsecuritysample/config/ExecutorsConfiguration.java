@@ -0,0 +1,58 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executors dedicated to the account services, so that a slow account backend
+ * cannot starve the web server threads or the other application tasks
+ * @author Fabian Bouché
+ *
+ */
+@Configuration
+public class ExecutorsConfiguration {
+
+	@Value("${sample.accounts.batch.threads:16}") int batchThreads;
+	@Value("${sample.accounts.batch.queue-capacity:1000}") int batchQueueCapacity;
+
+	/**
+	 * Spring Boot only auto-configures its application task executor (used for instance
+	 * by Spring MVC for streamed responses) when no other Executor bean exists
+	 * It is declared here the same way, so that the executors below do not replace it
+	 * @param builder The builder configured from the spring.task.execution properties
+	 * @return The application task executor
+	 */
+	@Lazy
+	@Bean(name = { TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+			AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME })
+	ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+		return builder.build();
+	}
+
+	/**
+	 * Executor of the batch account details fan-out
+	 * Its pool size bounds the number of concurrent details calls to the account backend
+	 * When the queue is full, the request thread fetches the details itself, which slows
+	 * down the caller instead of failing the batch
+	 * @return A bounded executor
+	 */
+	@Bean
+	ThreadPoolTaskExecutor accountsBatchExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setThreadNamePrefix("accounts-batch-");
+		executor.setCorePoolSize(batchThreads);
+		executor.setMaxPoolSize(batchThreads);
+		executor.setQueueCapacity(batchQueueCapacity);
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+		return executor;
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import java.time.Duration;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.support.BasicAuthenticationInterceptor;
+import org.springframework.security.oauth2.server.resource.introspection.NimbusOpaqueTokenIntrospector;
+import org.springframework.web.client.RestTemplate;
+
+import com.imolczek.training.spring.springsecuritysample.security.introspection.CachingOpaqueTokenIntrospector;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Opaque access tokens support, enabled with sample.security.token-type=opaque
+ * Tokens are checked against the IDP's introspection endpoint (RFC 7662) instead of
+ * being verified locally; JwtDecoderConfiguration then exposes the introspected claims
+ * as a Jwt, so that the claims to authorities mapping of MyIDPAuthoritiesConverter applies
+ * The introspection calls go through a pooled HTTP client, and their results are cached
+ * @author Fabian Bouché
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "sample.security.token-type", havingValue = "opaque")
+public class IntrospectionConfiguration {
+
+	@Value("${sample.security.introspection.uri}") String introspectionUri;
+	@Value("${sample.security.introspection.client-id}") String clientId;
+	@Value("${sample.security.introspection.client-secret}") String clientSecret;
+	@Value("${sample.security.introspection.cache.max-size:10000}") int cacheMaxSize;
+	@Value("${sample.security.introspection.cache.ttl:5m}") Duration cacheTtl;
+	@Value("${sample.security.introspection.http.max-connections:64}") int maxConnections;
+	@Value("${sample.security.introspection.http.connect-timeout:2s}") Duration connectTimeout;
+	@Value("${sample.security.introspection.http.read-timeout:2s}") Duration readTimeout;
+
+	/**
+	 * All the connections go to the same introspection endpoint, so the pool allows
+	 * as many connections per route as in total
+	 * @return The HTTP client of the introspection calls, closed with the application
+	 */
+	@Bean
+	CloseableHttpClient introspectionHttpClient() {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(this.maxConnections);
+		connectionManager.setDefaultMaxPerRoute(this.maxConnections);
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout((int) this.connectTimeout.toMillis())
+				.setConnectionRequestTimeout((int) this.connectTimeout.toMillis())
+				.setSocketTimeout((int) this.readTimeout.toMillis())
+				.build();
+		return HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.build();
+	}
+
+	@Bean
+	CachingOpaqueTokenIntrospector opaqueTokenIntrospector(CloseableHttpClient introspectionHttpClient,
+			MeterRegistry registry) {
+		RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(introspectionHttpClient));
+		restTemplate.getInterceptors().add(new BasicAuthenticationInterceptor(this.clientId, this.clientSecret));
+		CachingOpaqueTokenIntrospector introspector = new CachingOpaqueTokenIntrospector(
+				new NimbusOpaqueTokenIntrospector(this.introspectionUri, restTemplate), this.cacheMaxSize, this.cacheTtl);
+
+		FunctionCounter.builder("sample.security.introspection.requests", introspector, CachingOpaqueTokenIntrospector::getHitCount)
+				.description("Token introspections").tag("result", "hit").register(registry);
+		FunctionCounter.builder("sample.security.introspection.requests", introspector, CachingOpaqueTokenIntrospector::getMissCount)
+				.description("Token introspections").tag("result", "miss").register(registry);
+		FunctionCounter.builder("sample.security.introspection.requests", introspector, CachingOpaqueTokenIntrospector::getCoalescedCount)
+				.description("Token introspections").tag("result", "coalesced").register(registry);
+		Gauge.builder("sample.security.introspection.cache.size", introspector, CachingOpaqueTokenIntrospector::size)
+				.description("Tokens in the introspection cache").register(registry);
+		return introspector;
+	}
+
+}
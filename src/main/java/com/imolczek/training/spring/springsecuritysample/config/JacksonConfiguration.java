@@ -0,0 +1,31 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+/**
+ * Serialization of the resources (AccountResource, Whoami...) with accessors generated
+ * by Afterburner instead of reflection; disabled with sample.json.afterburner.enabled=false
+ * Spring Boot registers the module in the application ObjectMapper
+ * @author Fabian Bouché
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "sample.json.afterburner.enabled", havingValue = "true", matchIfMissing = true)
+public class JacksonConfiguration {
+
+	/**
+	 * The generated classes are defined in Afterburner's own class loader: this works on
+	 * any JDK, the resources exposing public accessors
+	 * @return The Afterburner module
+	 */
+	@Bean
+	Module afterburnerModule() {
+		return new AfterburnerModule().setUseValueClassLoader(false);
+	}
+
+}
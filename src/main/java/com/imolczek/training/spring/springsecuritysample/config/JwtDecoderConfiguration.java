@@ -0,0 +1,209 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.util.Assert;
+
+import com.imolczek.training.spring.springsecuritysample.config.MyIDPAuthoritiesConverter.ClaimNames;
+import com.imolczek.training.spring.springsecuritysample.config.TrustedIssuersProperties.TrustedIssuer;
+import com.imolczek.training.spring.springsecuritysample.security.introspection.CachingOpaqueTokenIntrospector;
+import com.imolczek.training.spring.springsecuritysample.security.introspection.IntrospectingJwtDecoder;
+import com.imolczek.training.spring.springsecuritysample.security.jwt.CachingJWKSource;
+import com.imolczek.training.spring.springsecuritysample.security.jwt.CachingJwtDecoder;
+import com.imolczek.training.spring.springsecuritysample.security.jwt.IssuerRoutingJwtDecoder;
+import com.imolczek.training.spring.springsecuritysample.security.metrics.InstrumentedJwtDecoder;
+import com.imolczek.training.spring.springsecuritysample.security.revocation.RevocationCheckingJwtDecoder;
+import com.imolczek.training.spring.springsecuritysample.security.revocation.RevocationList;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * JWT decoding, shared by the servlet and the reactive resource server configurations
+ * A single deployment may serve several issuers (e.g. several Keycloak realms) listed
+ * under sample.security.issuers, see TrustedIssuersProperties
+ * @author Fabian Bouché
+ *
+ */
+@Configuration
+@EnableConfigurationProperties(TrustedIssuersProperties.class)
+public class JwtDecoderConfiguration {
+
+	private static final String DEFAULT_ISSUER_TAG = "default";
+
+	@Value("${security.oauth2.resourceserver.jwk.jwk-set-uri}") String jwkSetUri;
+	@Value("${sample.security.jwk.refresh-interval:5m}") Duration jwkRefreshInterval;
+	@Value("${sample.security.jwk.min-refetch-interval:30s}") Duration jwkMinRefetchInterval;
+	@Value("${sample.security.jwk.prefetch:true}") boolean jwkPrefetch;
+	@Value("${sample.security.jwt.cache.enabled:true}") boolean jwtCacheEnabled;
+	@Value("${sample.security.jwt.cache.max-size:10000}") int jwtCacheMaxSize;
+	@Value("${sample.security.jwt.cache.clock-skew:60s}") Duration jwtCacheClockSkew;
+
+	private final List<CachingJWKSource> jwkSources = new CopyOnWriteArrayList<>();
+
+    /**
+     * Provision of a JwtDecoder bean that uses the IDP configuration from properties to
+     * decode the JWT access tokens provided alongside requests
+     * Signing keys come from a CachingJWKSource so that key lookups do not block on the IDP
+     * When trusted issuers are configured, each token is routed to the decoder of its
+     * issuer, created and given its own JWK source on the first token of that issuer
+     * Unless disabled, verified tokens are cached until they expire so that a client
+     * re-using its access token does not pay for the signature check again
+     * With opaque tokens (see IntrospectionConfiguration), tokens are introspected instead,
+     * the introspector keeping its own cache
+     * When revocation is enabled (see RevocationConfiguration), revoked tokens are rejected
+     * after the cache, so that a cached token can still be revoked
+     * Decoding is timed as a whole, cache hits included, see MetricsConfiguration
+     * Never lazily initialized, so that the JWK sets are fetched while the rest of the
+     * context starts rather than on the first request
+     * @return A JWTDecoder
+     */
+	@Bean
+	@Lazy(false)
+	JwtDecoder jwtDecoder(TrustedIssuersProperties trustedIssuers, MeterRegistry registry,
+			ObjectProvider<CachingOpaqueTokenIntrospector> opaqueTokenIntrospector,
+			ObjectProvider<RevocationList> revocationList) {
+		JwtDecoder decoder;
+		CachingOpaqueTokenIntrospector introspector = opaqueTokenIntrospector.getIfAvailable();
+		if (introspector != null) {
+			decoder = new IntrospectingJwtDecoder(introspector);
+		} else if (trustedIssuers.getIssuers().isEmpty()) {
+			CachingJWKSource jwkSource = jwkSource(this.jwkSetUri, DEFAULT_ISSUER_TAG, registry);
+			jwkSource.start();
+			decoder = verifyingDecoder(jwkSource, JwtValidators.createDefault());
+		} else {
+			Map<String, String> jwkSetUris = new HashMap<>();
+			for (TrustedIssuer trustedIssuer : trustedIssuers.getIssuers()) {
+				Assert.hasText(trustedIssuer.getIssuer(), "sample.security.issuers[].issuer is required");
+				Assert.hasText(trustedIssuer.getJwkSetUri(), "sample.security.issuers[].jwk-set-uri is required");
+				jwkSetUris.put(trustedIssuer.getIssuer(), trustedIssuer.getJwkSetUri());
+			}
+			// The issuer was read from the unverified token, its decoder checks it again
+			IssuerRoutingJwtDecoder routingDecoder = new IssuerRoutingJwtDecoder(jwkSetUris.keySet(), issuer -> {
+				CachingJWKSource jwkSource = jwkSource(jwkSetUris.get(issuer), issuer, registry);
+				// The token which triggered the creation waits for the first key set in the key lookup
+				jwkSource.start();
+				return verifyingDecoder(jwkSource, JwtValidators.createDefaultWithIssuer(issuer));
+			});
+			if (this.jwkPrefetch) {
+				prefetch(routingDecoder, jwkSetUris.size());
+			}
+			decoder = routingDecoder;
+		}
+
+		if (this.jwtCacheEnabled && introspector == null) {
+			CachingJwtDecoder cache = new CachingJwtDecoder(decoder, this.jwtCacheMaxSize, this.jwtCacheClockSkew);
+			bindCacheMetrics(cache, registry);
+			decoder = cache;
+		}
+		RevocationList revocations = revocationList.getIfAvailable();
+		if (revocations != null) {
+			decoder = new RevocationCheckingJwtDecoder(decoder, revocations);
+		}
+		return new InstrumentedJwtDecoder(decoder, registry);
+	}
+
+	/**
+	 * Creates the decoders of all the trusted issuers in parallel, in the background
+	 */
+	private static void prefetch(IssuerRoutingJwtDecoder routingDecoder, int issuerCount) {
+		ExecutorService prefetcher = Executors.newFixedThreadPool(issuerCount, runnable -> {
+			Thread thread = new Thread(runnable, "jwk-set-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+		routingDecoder.prefetch(prefetcher).whenComplete((result, failure) -> prefetcher.shutdown());
+	}
+
+	/**
+	 * Provision of the converter mapping token claims to authorities, with the claim names
+	 * configured for each trusted issuer
+	 * @return A MyIDPAuthoritiesConverter
+	 */
+	@Bean
+	MyIDPAuthoritiesConverter myIDPAuthoritiesConverter(TrustedIssuersProperties trustedIssuers) {
+		Map<String, ClaimNames> claimNamesByIssuer = new HashMap<>();
+		for (TrustedIssuer trustedIssuer : trustedIssuers.getIssuers()) {
+			claimNamesByIssuer.put(trustedIssuer.getIssuer(),
+					new ClaimNames(trustedIssuer.getRolesClaim(), trustedIssuer.getScopeClaim()));
+		}
+		return new MyIDPAuthoritiesConverter(claimNamesByIssuer);
+	}
+
+	private static JwtDecoder verifyingDecoder(CachingJWKSource jwkSource, OAuth2TokenValidator<Jwt> validator) {
+		DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+		jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, jwkSource));
+		// Claims are validated by the Spring Security validators
+		jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> { });
+
+		NimbusJwtDecoder decoder = new NimbusJwtDecoder(jwtProcessor);
+		decoder.setJwtValidator(validator);
+		return decoder;
+	}
+
+	/**
+	 * Provision of the signing keys published by an IDP on its JWK set URI
+	 * Keys are refreshed in the background once the source is started
+	 * @return A JWKSource, closed with this configuration
+	 */
+	private CachingJWKSource jwkSource(String jwkSetUri, String issuerTag, MeterRegistry registry) {
+		CachingJWKSource jwkSource = new CachingJWKSource(URI.create(jwkSetUri),
+				this.jwkRefreshInterval, this.jwkMinRefetchInterval);
+		this.jwkSources.add(jwkSource);
+		bindJwkSourceMetrics(jwkSource, issuerTag, registry);
+		return jwkSource;
+	}
+
+	@PreDestroy
+	void closeJwkSources() {
+		this.jwkSources.forEach(CachingJWKSource::close);
+	}
+
+	private static void bindJwkSourceMetrics(CachingJWKSource jwkSource, String issuerTag, MeterRegistry registry) {
+		FunctionCounter.builder("sample.security.jwk.fetches", jwkSource, CachingJWKSource::getFetchCount)
+				.description("JWK set fetches").tags("issuer", issuerTag, "outcome", "success").register(registry);
+		FunctionCounter.builder("sample.security.jwk.fetches", jwkSource, CachingJWKSource::getFetchFailureCount)
+				.description("JWK set fetches").tags("issuer", issuerTag, "outcome", "failure").register(registry);
+		FunctionCounter.builder("sample.security.jwk.unknown.kid", jwkSource, CachingJWKSource::getUnknownKidCount)
+				.description("Tokens signed with a kid missing from the JWK set").tag("issuer", issuerTag).register(registry);
+		Gauge.builder("sample.security.jwk.keys", jwkSource, CachingJWKSource::getKeyCount)
+				.description("Keys in the current JWK set").tag("issuer", issuerTag).register(registry);
+	}
+
+	private static void bindCacheMetrics(CachingJwtDecoder cache, MeterRegistry registry) {
+		FunctionCounter.builder("sample.security.jwt.cache.requests", cache, CachingJwtDecoder::getHitCount)
+				.description("Lookups in the verified token cache").tag("result", "hit").register(registry);
+		FunctionCounter.builder("sample.security.jwt.cache.requests", cache, CachingJwtDecoder::getMissCount)
+				.description("Lookups in the verified token cache").tag("result", "miss").register(registry);
+		FunctionCounter.builder("sample.security.jwt.cache.evictions", cache, CachingJwtDecoder::getEvictionCount)
+				.description("Tokens evicted from the verified token cache").register(registry);
+		Gauge.builder("sample.security.jwt.cache.size", cache, CachingJwtDecoder::size)
+				.description("Tokens in the verified token cache").register(registry);
+	}
+
+}
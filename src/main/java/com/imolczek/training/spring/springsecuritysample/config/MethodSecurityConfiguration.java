@@ -0,0 +1,70 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.security.access.AccessDecisionManager;
+import org.springframework.security.access.AccessDecisionVoter;
+import org.springframework.security.access.method.MethodSecurityMetadataSource;
+import org.springframework.security.access.vote.AbstractAccessDecisionManager;
+import org.springframework.security.access.vote.AffirmativeBased;
+import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
+import org.springframework.security.config.annotation.method.configuration.GlobalMethodSecurityConfiguration;
+
+import com.imolczek.training.spring.springsecuritysample.security.method.AuthorityIndex;
+import com.imolczek.training.spring.springsecuritysample.security.method.AuthorizationRuleCompiler;
+import com.imolczek.training.spring.springsecuritysample.security.method.CompiledPreAuthorizeMetadataSource;
+import com.imolczek.training.spring.springsecuritysample.security.method.CompiledRuleVoter;
+import com.imolczek.training.spring.springsecuritysample.security.metrics.InstrumentedAccessDecisionManager;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The prePostEnabled attribute is what allows me to use @PreAuthorize annotations in the REST
+ * controller to authorize requests depending on the scope or the roles
+ * By default, Spring evaluates the SpEL expression of the annotation on every call
+ * When sample.security.method.compiled-rules is enabled, the expressions are compiled once
+ * at startup into predicates over a bitset of the granted authorities instead
+ * The application then fails to start if an expression cannot be compiled
+ * Either way, decisions are timed per secured method, see MetricsConfiguration
+ * The reactive profile relies on @EnableReactiveMethodSecurity instead
+ * @author Fabian Bouché
+ *
+ */
+@EnableGlobalMethodSecurity(prePostEnabled = true)
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class MethodSecurityConfiguration extends GlobalMethodSecurityConfiguration {
+
+	@Value("${sample.security.method.compiled-rules:false}") boolean compiledRules;
+	// Method security is set up early, the registry is only looked up on the first decision
+	@Autowired ObjectProvider<MeterRegistry> meterRegistry;
+
+	private final AuthorityIndex authorityIndex = new AuthorityIndex();
+
+	@Override
+	protected MethodSecurityMetadataSource customMethodSecurityMetadataSource() {
+		if (!this.compiledRules) {
+			return null;
+		}
+		return new CompiledPreAuthorizeMetadataSource(new AuthorizationRuleCompiler(this.authorityIndex));
+	}
+
+	@Override
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	protected AccessDecisionManager accessDecisionManager() {
+		AccessDecisionManager accessDecisionManager = super.accessDecisionManager();
+		if (this.compiledRules) {
+			List<AccessDecisionVoter<?>> voters = new ArrayList<>();
+			voters.add(new CompiledRuleVoter(this.authorityIndex));
+			voters.addAll((List) ((AbstractAccessDecisionManager) accessDecisionManager).getDecisionVoters());
+			accessDecisionManager = new AffirmativeBased(voters);
+		}
+		return new InstrumentedAccessDecisionManager(accessDecisionManager, this.meterRegistry::getObject);
+	}
+
+}
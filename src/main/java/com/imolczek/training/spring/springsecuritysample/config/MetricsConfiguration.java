@@ -0,0 +1,53 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.imolczek.training.spring.springsecuritysample.services.AccountsService;
+import com.imolczek.training.spring.springsecuritysample.services.TimedAccountsService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Metrics of the authentication and authorization stages, exposed through the
+ * Actuator prometheus endpoint
+ * - sample.security.jwt.decode: token decoding, see JwtDecoderConfiguration
+ * - sample.security.jwt.cache.*: verified token cache, see JwtDecoderConfiguration
+ * - sample.security.jwk.*: JWK set fetches, per issuer, see JwtDecoderConfiguration
+ * - sample.security.authorities.conversion: claims to authorities mapping
+ * - sample.security.ratelimit.rejected: requests over quota, see OAuth2ResourceServerSecurityConfiguration
+ * - sample.security.authorization*: @PreAuthorize decisions, see MethodSecurityConfiguration
+ * - sample.accounts.service: AccountsService calls
+ * - sample.accounts.cache.*: accounts cache, see AccountsCacheConfiguration
+ * - sample.web.async.*: async account calls, see AsyncWebConfiguration
+ * - http.server.requests: each SampleController endpoint (Spring Boot)
+ * @author Fabian Bouché
+ *
+ */
+@Configuration
+public class MetricsConfiguration {
+
+	/**
+	 * Times whichever AccountsService implementation is active
+	 * @param registry The meter registry, looked up when the accounts service is created
+	 * @return A BeanPostProcessor decorating the AccountsService beans
+	 */
+	@Bean
+	static BeanPostProcessor timedAccountsServicePostProcessor(ObjectProvider<MeterRegistry> registry) {
+		return new BeanPostProcessor() {
+
+			@Override
+			public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+				if (bean instanceof AccountsService && !(bean instanceof TimedAccountsService)) {
+					return new TimedAccountsService((AccountsService) bean, registry.getObject());
+				}
+				return bean;
+			}
+
+		};
+	}
+
+}
@@ -1,10 +1,13 @@
 package com.imolczek.training.spring.springsecuritysample.config;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.core.GrantedAuthority;
@@ -19,35 +22,195 @@ import org.springframework.security.oauth2.jwt.Jwt;
  * If you don't provide such Converter, Spring by default loads the list of
  * authorities with the scopes found inside of either the scope or scp claim
  * 
+ * Tokens usually share a handful of roles / scope combinations, so the
+ * resulting authority collections are cached per distinct (roles, scope) pair
+ * and the authorities themselves are interned: converting a token that was
+ * seen before allocates nothing but a lookup key
+ * Both caches are bounded; once full, new combinations are still converted
+ * but no longer cached
+ * A missing roles or scope claim simply contributes no authority
+ * 
+ * By default roles are read from the roles claim and scopes from the scope claim
+ * Other claim names can be configured per token issuer, a dotted name reaching into
+ * a nested claim (e.g. realm_access.roles for Keycloak realm roles)
+ * 
  * @author Fabian Bouché
  *
  */
 public class MyIDPAuthoritiesConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
 
-    @Override
-    @SuppressWarnings("unchecked")
-    public Collection<GrantedAuthority> convert(final Jwt jwt) {
-        
-    	List<GrantedAuthority> rolesCollection =
-    			((List<String>) jwt.getClaim("roles")).stream()
-                .map(roleName -> "ROLE_" + roleName)
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toList());
-
-        List<GrantedAuthority> scopesCollection =
-        		new ArrayList<String>(
-        				Arrays.asList(
-        						((String) jwt.getClaim("scope")).split(" ")
-        						)
-        				).stream()
-                .map(scopeName -> "SCOPE_" + scopeName)
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toList());
-        
-        List<GrantedAuthority> grantedAuthorities = rolesCollection;
-        grantedAuthorities.addAll(scopesCollection);
-        
-        return grantedAuthorities;
-    }
-    
+	private static final int DEFAULT_MAX_AUTHORITIES = 1024;
+	private static final int DEFAULT_MAX_COMBINATIONS = 4096;
+
+	private final int maxAuthorities;
+	private final int maxCombinations;
+	private final Map<String, ClaimNames> claimNamesByIssuer;
+	private final Map<String, GrantedAuthority> authorities = new ConcurrentHashMap<>();
+	private final Map<ClaimsKey, Collection<GrantedAuthority>> combinations = new ConcurrentHashMap<>();
+
+	public MyIDPAuthoritiesConverter() {
+		this(DEFAULT_MAX_AUTHORITIES, DEFAULT_MAX_COMBINATIONS);
+	}
+
+	public MyIDPAuthoritiesConverter(int maxAuthorities, int maxCombinations) {
+		this(maxAuthorities, maxCombinations, Collections.emptyMap());
+	}
+
+	/**
+	 * @param claimNamesByIssuer Where to find roles and scopes, by token issuer; other
+	 *            issuers use ClaimNames.DEFAULT
+	 */
+	public MyIDPAuthoritiesConverter(Map<String, ClaimNames> claimNamesByIssuer) {
+		this(DEFAULT_MAX_AUTHORITIES, DEFAULT_MAX_COMBINATIONS, claimNamesByIssuer);
+	}
+
+	public MyIDPAuthoritiesConverter(int maxAuthorities, int maxCombinations, Map<String, ClaimNames> claimNamesByIssuer) {
+		this.maxAuthorities = maxAuthorities;
+		this.maxCombinations = maxCombinations;
+		this.claimNamesByIssuer = new HashMap<>(claimNamesByIssuer);
+	}
+
+	@Override
+	public Collection<GrantedAuthority> convert(final Jwt jwt) {
+		Map<String, Object> claims = jwt.getClaims();
+		ClaimNames claimNames = this.claimNamesByIssuer.isEmpty()
+				? ClaimNames.DEFAULT
+				: this.claimNamesByIssuer.getOrDefault(jwt.getClaimAsString("iss"), ClaimNames.DEFAULT);
+		return convert(claimNames.roles.get(claims), claimNames.scope.get(claims));
+	}
+
+	/**
+	 * Maps raw roles and scope claim values to authorities
+	 * @param roles The roles claim: a collection of role names, or null
+	 * @param scope The scope claim: a space separated string or a collection of scope names, or null
+	 * @return An immutable collection of authorities, shared between calls with the same claims
+	 */
+	public Collection<GrantedAuthority> convert(Object roles, Object scope) {
+		ClaimsKey key = new ClaimsKey(roles, scope);
+		Collection<GrantedAuthority> cached = this.combinations.get(key);
+		if (cached != null) {
+			return cached;
+		}
+
+		List<GrantedAuthority> grantedAuthorities = new ArrayList<>();
+		if (roles instanceof Collection) {
+			for (Object roleName : (Collection<?>) roles) {
+				grantedAuthorities.add(authority("ROLE_", String.valueOf(roleName)));
+			}
+		}
+		if (scope instanceof String) {
+			for (String scopeName : ((String) scope).split(" ")) {
+				if (!scopeName.isEmpty()) {
+					grantedAuthorities.add(authority("SCOPE_", scopeName));
+				}
+			}
+		} else if (scope instanceof Collection) {
+			for (Object scopeName : (Collection<?>) scope) {
+				grantedAuthorities.add(authority("SCOPE_", String.valueOf(scopeName)));
+			}
+		}
+
+		Collection<GrantedAuthority> converted = Collections.unmodifiableList(grantedAuthorities);
+		if (this.combinations.size() < this.maxCombinations) {
+			// The key keeps its own copy of the claims: the token's claim values must not be retained
+			this.combinations.putIfAbsent(key.copy(), converted);
+		}
+		return converted;
+	}
+
+	private GrantedAuthority authority(String prefix, String name) {
+		String authorityName = prefix + name;
+		GrantedAuthority authority = this.authorities.get(authorityName);
+		if (authority == null) {
+			authority = new SimpleGrantedAuthority(authorityName);
+			if (this.authorities.size() < this.maxAuthorities) {
+				GrantedAuthority existing = this.authorities.putIfAbsent(authorityName, authority);
+				if (existing != null) {
+					authority = existing;
+				}
+			}
+		}
+		return authority;
+	}
+
+	/**
+	 * Names of the claims holding the roles and the scopes of a token
+	 */
+	public static final class ClaimNames {
+
+		public static final ClaimNames DEFAULT = new ClaimNames("roles", "scope");
+
+		private final ClaimPath roles;
+		private final ClaimPath scope;
+
+		/**
+		 * @param roles Name of the roles claim, possibly dotted to reach into a nested claim
+		 * @param scope Name of the scope claim, possibly dotted to reach into a nested claim
+		 */
+		public ClaimNames(String roles, String scope) {
+			this.roles = new ClaimPath(roles);
+			this.scope = new ClaimPath(scope);
+		}
+
+	}
+
+	private static final class ClaimPath {
+
+		private final String[] names;
+
+		ClaimPath(String path) {
+			this.names = path.split("\\.");
+		}
+
+		Object get(Map<String, Object> claims) {
+			Object value = claims.get(this.names[0]);
+			for (int i = 1; i < this.names.length && value != null; i++) {
+				value = value instanceof Map ? ((Map<?, ?>) value).get(this.names[i]) : null;
+			}
+			return value;
+		}
+
+	}
+
+	/**
+	 * Lookup key made of the raw roles and scope claim values
+	 */
+	private static final class ClaimsKey {
+
+		private final Object roles;
+		private final Object scope;
+		private final int hash;
+
+		ClaimsKey(Object roles, Object scope) {
+			this.roles = roles;
+			this.scope = scope;
+			this.hash = 31 * Objects.hashCode(roles) + Objects.hashCode(scope);
+		}
+
+		ClaimsKey copy() {
+			return new ClaimsKey(immutableCopy(this.roles), immutableCopy(this.scope));
+		}
+
+		private static Object immutableCopy(Object claim) {
+			return claim instanceof Collection
+					? Collections.unmodifiableList(new ArrayList<>((Collection<?>) claim))
+					: claim;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof ClaimsKey)) {
+				return false;
+			}
+			ClaimsKey that = (ClaimsKey) other;
+			return this.hash == that.hash && Objects.equals(this.roles, that.roles) && Objects.equals(this.scope, that.scope);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+	}
+
 }
@@ -1,34 +1,84 @@
 package com.imolczek.training.spring.springsecuritysample.config;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Bean;
-import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
-import org.springframework.security.oauth2.jwt.JwtDecoder;
-import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenAuthenticationFilter;
 import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import com.imolczek.training.spring.springsecuritysample.security.PrecomputedBearerTokenEntryPoint;
+import com.imolczek.training.spring.springsecuritysample.security.metrics.TimedAuthoritiesConverter;
+import com.imolczek.training.spring.springsecuritysample.security.ratelimit.Quota;
+import com.imolczek.training.spring.springsecuritysample.security.ratelimit.RateLimitFilter;
+import com.imolczek.training.spring.springsecuritysample.security.ratelimit.RateLimiter;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * See documentation here: https://docs.spring.io/spring-security/site/docs/current/api/org/springframework/security/config/annotation/web/builders/HttpSecurity.html#oauth2ResourceServer-org.springframework.security.config.Customizer-
- * The prePostEnabled attribute is what allows me to use @PreAuthorize annotations in the REST
- * controller to authorize requests depending on the scope or the roles 
+ * Method security (@PreAuthorize annotations) is enabled in MethodSecurityConfiguration
+ * The JwtDecoder comes from JwtDecoderConfiguration
+ * This configuration applies to the default servlet stack; see ReactiveSecurityConfiguration
+ * for the reactive profile
+ * Authenticated clients are rate limited per subject and client id, with separate quotas
+ * for the accounts:list and accounts:details operations
  * @author Fabian Bouché
  *
  */
 @EnableWebSecurity
-@EnableGlobalMethodSecurity(prePostEnabled = true)
+@ConditionalOnWebApplication(type = Type.SERVLET)
 public class OAuth2ResourceServerSecurityConfiguration extends WebSecurityConfigurerAdapter {
 
-	@Value("${security.oauth2.resourceserver.jwk.jwk-set-uri}") String jwkSetUri;
+	@Autowired ObjectProvider<MeterRegistry> meterRegistry;
+	@Autowired MyIDPAuthoritiesConverter authoritiesConverter;
+
+	@Value("${sample.security.rate-limit.enabled:true}") boolean rateLimitEnabled;
+	@Value("${sample.security.rate-limit.max-clients:100000}") int rateLimitMaxClients;
+	@Value("${sample.security.rate-limit.default.requests-per-second:20}") double defaultRate;
+	@Value("${sample.security.rate-limit.default.burst:40}") int defaultBurst;
+	@Value("${sample.security.rate-limit.accounts-list.requests-per-second:5}") double accountsListRate;
+	@Value("${sample.security.rate-limit.accounts-list.burst:10}") int accountsListBurst;
+	@Value("${sample.security.rate-limit.accounts-details.requests-per-second:20}") double accountsDetailsRate;
+	@Value("${sample.security.rate-limit.accounts-details.burst:40}") int accountsDetailsBurst;
 
 	@Override
 	protected void configure(HttpSecurity http) throws Exception {
 		// Enabling OAuth 2.0 Resource server security with JWT Token validation
-		http.oauth2ResourceServer().jwt().jwtAuthenticationConverter(jwtAuthenticationConverter());
+		// Requests without a valid token are answered with a precomputed 401
+		http.oauth2ResourceServer()
+			.authenticationEntryPoint(new PrecomputedBearerTokenEntryPoint())
+			.jwt().jwtAuthenticationConverter(jwtAuthenticationConverter());
+
+		// Rate limiting needs the authenticated subject, but must run before the controller
+		if (this.rateLimitEnabled) {
+			http.addFilterAfter(rateLimitFilter(), BearerTokenAuthenticationFilter.class);
+		}
+	}
 
+	/**
+	 * Not exposed as a bean, otherwise Spring Boot would also register it in the servlet container
+	 * @return the RateLimitFilter
+	 */
+	private RateLimitFilter rateLimitFilter() {
+		Quota accountsList = new Quota("accounts:list", this.accountsListRate, this.accountsListBurst);
+		Quota accountsDetails = new Quota("accounts:details", this.accountsDetailsRate, this.accountsDetailsBurst);
+		Map<RequestMatcher, Quota> quotas = new LinkedHashMap<>();
+		quotas.put(new AntPathRequestMatcher("/sample/api/v1/accounts", HttpMethod.GET.name()), accountsList);
+		quotas.put(new AntPathRequestMatcher("/sample/api/v1/accounts/**"), accountsDetails);
+		return new RateLimitFilter(new RateLimiter(this.rateLimitMaxClients), quotas,
+				new Quota("default", this.defaultRate, this.defaultBurst), this.meterRegistry.getObject());
 	}
 	
 	/**
@@ -38,22 +88,15 @@ public class OAuth2ResourceServerSecurityConfiguration extends WebSecurityConfig
 	 * as "Authorities" bound to the security context
 	 * The mapped Authorities can be used in the @PreAuthorize annotations
 	 * inside of the REST Controller
+	 * The converter comes from JwtDecoderConfiguration, where the claims are configured per issuer
+	 * The conversion is timed, see MetricsConfiguration
 	 * @return the JwtAuthenticationConverter
 	 */
     private JwtAuthenticationConverter jwtAuthenticationConverter() {
         JwtAuthenticationConverter jwtAuthenticationConverter = new JwtAuthenticationConverter();
-        jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(new MyIDPAuthoritiesConverter());
+        jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(
+        		new TimedAuthoritiesConverter(this.authoritiesConverter, this.meterRegistry.getObject()));
         return jwtAuthenticationConverter;
     }	
-
-    /**
-     * Provision of a JwtDecoder bean that uses the IDP configuration from properties to
-     * decode the JWT access tokens provided alongside requests
-     * @return A JWTDecoder
-     */
-	@Bean
-	JwtDecoder jwtDecoder() {
-		return NimbusJwtDecoder.withJwkSetUri(this.jwkSetUri).build();
-	}
 	
 }
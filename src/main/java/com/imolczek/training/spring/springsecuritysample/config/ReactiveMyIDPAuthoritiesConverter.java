@@ -0,0 +1,29 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Reactive flavour of MyIDPAuthoritiesConverter, used by the reactive profile
+ * The mapping itself is CPU only (and usually a cache hit), so it is done inline
+ * 
+ * @author Fabian Bouché
+ *
+ */
+public class ReactiveMyIDPAuthoritiesConverter implements Converter<Jwt, Flux<GrantedAuthority>> {
+
+	private final MyIDPAuthoritiesConverter delegate;
+
+	public ReactiveMyIDPAuthoritiesConverter(MyIDPAuthoritiesConverter delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public Flux<GrantedAuthority> convert(final Jwt jwt) {
+		return Flux.fromIterable(this.delegate.convert(jwt));
+	}
+
+}
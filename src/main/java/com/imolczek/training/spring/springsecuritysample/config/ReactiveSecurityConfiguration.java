@@ -0,0 +1,68 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverter;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Reactive counterpart of OAuth2ResourceServerSecurityConfiguration, enabled with the
+ * "reactive" profile which switches the application to WebFlux
+ * The @PreAuthorize annotations of ReactiveSampleController are enforced by
+ * @EnableReactiveMethodSecurity
+ * @author Fabian Bouché
+ *
+ */
+@EnableWebFluxSecurity
+@EnableReactiveMethodSecurity
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveSecurityConfiguration {
+
+	@Bean
+	SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, MyIDPAuthoritiesConverter authoritiesConverter) {
+		// Enabling OAuth 2.0 Resource server security with JWT Token validation
+		// Authorization is done at method level, and a bearer token API has no use for CSRF protection
+		http.csrf().disable()
+			.authorizeExchange().anyExchange().permitAll()
+			.and()
+			.oauth2ResourceServer().jwt().jwtAuthenticationConverter(jwtAuthenticationConverter(authoritiesConverter));
+		return http.build();
+	}
+
+	/**
+	 * Same claims to authorities mapping as the servlet configuration
+	 * @param authoritiesConverter The converter provided by JwtDecoderConfiguration
+	 * @return the ReactiveJwtAuthenticationConverter
+	 */
+	private ReactiveJwtAuthenticationConverter jwtAuthenticationConverter(MyIDPAuthoritiesConverter authoritiesConverter) {
+		ReactiveJwtAuthenticationConverter jwtAuthenticationConverter = new ReactiveJwtAuthenticationConverter();
+		jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(
+				new ReactiveMyIDPAuthoritiesConverter(authoritiesConverter));
+		return jwtAuthenticationConverter;
+	}
+
+	/**
+	 * Reuses the JwtDecoder of JwtDecoderConfiguration
+	 * Decoding may block: JWK set fetches for an unknown kid or a new issuer, and remote
+	 * introspection of opaque tokens, so it is moved off the event loop to the bounded
+	 * elastic scheduler, like the calls to the AccountsService
+	 * @param jwtDecoder The shared JwtDecoder
+	 * @return A ReactiveJwtDecoder
+	 */
+	@Bean
+	ReactiveJwtDecoder reactiveJwtDecoder(JwtDecoder jwtDecoder) {
+		Scheduler scheduler = Schedulers.boundedElastic();
+		return token -> Mono.fromCallable(() -> jwtDecoder.decode(token)).subscribeOn(scheduler);
+	}
+
+}
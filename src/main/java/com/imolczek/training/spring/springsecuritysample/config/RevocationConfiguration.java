@@ -0,0 +1,66 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import com.imolczek.training.spring.springsecuritysample.security.revocation.RevocationFeed;
+import com.imolczek.training.spring.springsecuritysample.security.revocation.RevocationList;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Token revocation, enabled with sample.security.revocation.enabled
+ * Revoked tokens and subjects are read from a local feed file, see RevocationFeed, and
+ * JwtDecoderConfiguration rejects the tokens found in the resulting RevocationList
+ * @author Fabian Bouché
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "sample.security.revocation.enabled", havingValue = "true")
+public class RevocationConfiguration {
+
+	@Value("${sample.security.revocation.file:revocations.txt}") String file;
+	@Value("${sample.security.revocation.poll-interval:1s}") Duration pollInterval;
+	@Value("${sample.security.revocation.prune-interval:1m}") Duration pruneInterval;
+	@Value("${sample.security.revocation.expected-entries:100000}") int expectedEntries;
+	@Value("${sample.security.revocation.false-positive-rate:0.001}") double falsePositiveRate;
+
+	@Bean
+	RevocationList revocationList(MeterRegistry registry) {
+		RevocationList revocationList = new RevocationList(this.expectedEntries, this.falsePositiveRate);
+		Gauge.builder("sample.security.revocation.entries", revocationList, RevocationList::getTokenCount)
+				.description("Live revocations").tag("kind", "token").register(registry);
+		Gauge.builder("sample.security.revocation.entries", revocationList, RevocationList::getSubjectCount)
+				.description("Live revocations").tag("kind", "subject").register(registry);
+		FunctionCounter.builder("sample.security.revocation.checks", revocationList, RevocationList::getRevokedCount)
+				.description("Revocation checks which did not end at the filter").tag("result", "revoked").register(registry);
+		FunctionCounter.builder("sample.security.revocation.checks", revocationList, RevocationList::getFalsePositiveCount)
+				.description("Revocation checks which did not end at the filter").tag("result", "false_positive").register(registry);
+		return revocationList;
+	}
+
+	/**
+	 * Nothing depends on the feed, it must not be lazily initialized
+	 * @return The started feed
+	 */
+	@Bean(destroyMethod = "close")
+	@Lazy(false)
+	RevocationFeed revocationFeed(RevocationList revocationList, MeterRegistry registry) {
+		RevocationFeed feed = new RevocationFeed(Paths.get(this.file), revocationList, this.pollInterval, this.pruneInterval);
+		FunctionCounter.builder("sample.security.revocation.feed.updates", feed, RevocationFeed::getAppliedCount)
+				.description("Revocation feed lines").tag("outcome", "applied").register(registry);
+		FunctionCounter.builder("sample.security.revocation.feed.updates", feed, RevocationFeed::getMalformedCount)
+				.description("Revocation feed lines").tag("outcome", "malformed").register(registry);
+		feed.start();
+		return feed;
+	}
+
+}
@@ -1,14 +1,26 @@
 package com.imolczek.training.spring.springsecuritysample.config;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.annotation.CurrentSecurityContext;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.filter.OncePerRequestFilter;
 
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
@@ -20,11 +32,22 @@ import springfox.documentation.service.SecurityScheme;
 import springfox.documentation.service.TokenEndpoint;
 import springfox.documentation.service.TokenRequestEndpoint;
 import springfox.documentation.spi.DocumentationType;
+import springfox.documentation.spring.web.plugins.DocumentationPluginsBootstrapper;
 import springfox.documentation.spring.web.plugins.Docket;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
+/**
+ * Swagger documentation of the REST API, disabled with sample.swagger.enabled=false
+ * Springfox scans every controller when the context starts; with
+ * springfox.documentation.auto-startup=false (see the fast-startup profile) the scan is
+ * deferred to the first request for the documentation instead
+ * @author Fabian Bouché
+ *
+ */
 @Configuration
 @EnableSwagger2
+@ConditionalOnWebApplication(type = Type.SERVLET)
+@ConditionalOnProperty(name = "sample.swagger.enabled", havingValue = "true", matchIfMissing = true)
 public class SwaggerConfig {
     
 	@Value("${security.oauth2.client.userAuthorizationUri}") String authUrl;
@@ -51,10 +74,46 @@ public class SwaggerConfig {
         return new Docket(DocumentationType.SWAGGER_2)  
         		.ignoredParameterTypes(AuthenticationPrincipal.class)
         		.ignoredParameterTypes(CurrentSecurityContext.class)
+        		// Responses of AsyncSampleController are documented as their content
+        		.genericModelSubstitutes(CompletableFuture.class)
         		.select()               
                 .apis(RequestHandlerSelectors.withClassAnnotation(RestController.class))
         		.paths(PathSelectors.any())
         		.build()
     			.securitySchemes(schemeList);                                           
     }
+
+	/**
+	 * Builds the documentation on the first request for it, when springfox does not at startup
+	 * @param bootstrapper The springfox component scanning the controllers
+	 * @return The registration of the filter, limited to the documentation endpoints
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "springfox.documentation.auto-startup", havingValue = "false")
+	FilterRegistrationBean<OncePerRequestFilter> lazySwaggerDocumentation(DocumentationPluginsBootstrapper bootstrapper) {
+		OncePerRequestFilter filter = new OncePerRequestFilter() {
+
+			private volatile boolean started;
+
+			@Override
+			protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+					FilterChain filterChain) throws ServletException, IOException {
+				if (!this.started) {
+					// The bootstrapper returns right away to concurrent callers, before its scan is over
+					synchronized (this) {
+						if (!this.started) {
+							bootstrapper.start();
+							this.started = true;
+						}
+					}
+				}
+				filterChain.doFilter(request, response);
+			}
+
+		};
+		FilterRegistrationBean<OncePerRequestFilter> registration = new FilterRegistrationBean<>(filter);
+		registration.addUrlPatterns("/v2/api-docs", "/swagger-resources", "/swagger-resources/*");
+		return registration;
+	}
+
 }
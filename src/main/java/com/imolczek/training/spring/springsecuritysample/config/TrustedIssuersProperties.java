@@ -0,0 +1,84 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * The token issuers (e.g. the Keycloak realms) accepted by the resource server
+ * When none is listed, tokens are verified against security.oauth2.resourceserver.jwk.jwk-set-uri
+ * whatever their issuer, as a single-issuer deployment would
+ * @author Fabian Bouché
+ *
+ */
+@ConfigurationProperties(prefix = "sample.security")
+public class TrustedIssuersProperties {
+
+	private List<TrustedIssuer> issuers = new ArrayList<>();
+
+	public List<TrustedIssuer> getIssuers() {
+		return issuers;
+	}
+
+	public void setIssuers(List<TrustedIssuer> issuers) {
+		this.issuers = issuers;
+	}
+
+	public static class TrustedIssuer {
+
+		/**
+		 * Expected value of the iss claim
+		 */
+		private String issuer;
+
+		/**
+		 * Where the signing keys of the issuer are published
+		 */
+		private String jwkSetUri;
+
+		/**
+		 * Claim holding the roles, dotted to reach into a nested claim
+		 */
+		private String rolesClaim = "roles";
+
+		/**
+		 * Claim holding the scopes, dotted to reach into a nested claim
+		 */
+		private String scopeClaim = "scope";
+
+		public String getIssuer() {
+			return issuer;
+		}
+
+		public void setIssuer(String issuer) {
+			this.issuer = issuer;
+		}
+
+		public String getJwkSetUri() {
+			return jwkSetUri;
+		}
+
+		public void setJwkSetUri(String jwkSetUri) {
+			this.jwkSetUri = jwkSetUri;
+		}
+
+		public String getRolesClaim() {
+			return rolesClaim;
+		}
+
+		public void setRolesClaim(String rolesClaim) {
+			this.rolesClaim = rolesClaim;
+		}
+
+		public String getScopeClaim() {
+			return scopeClaim;
+		}
+
+		public void setScopeClaim(String scopeClaim) {
+			this.scopeClaim = scopeClaim;
+		}
+
+	}
+
+}
@@ -0,0 +1,9 @@
+package com.imolczek.training.spring.springsecuritysample.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.PAYLOAD_TOO_LARGE, reason = "Too many items in the batch")
+public class BatchTooLargeException extends RuntimeException {
+
+}
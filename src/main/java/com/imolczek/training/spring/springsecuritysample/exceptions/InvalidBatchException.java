@@ -0,0 +1,9 @@
+package com.imolczek.training.spring.springsecuritysample.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Missing or blank account numbers in the batch")
+public class InvalidBatchException extends RuntimeException {
+
+}
@@ -0,0 +1,9 @@
+package com.imolczek.training.spring.springsecuritysample.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST, reason = "Invalid pagination cursor")
+public class InvalidCursorException extends RuntimeException {
+
+}
@@ -3,7 +3,21 @@ package com.imolczek.training.spring.springsecuritysample.exceptions;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+/**
+ * The account does not belong to the authenticated user, or does not exist
+ * This is the most frequent denial, and the one account enumeration attempts trigger:
+ * the exception carries no stack trace and a single shared instance is thrown
+ * On the servlet stack, the 403 response is written by DenialExceptionHandler
+ */
 @ResponseStatus(value = HttpStatus.FORBIDDEN)
 public class WrongAccountHolderException extends RuntimeException {
 
+	private static final long serialVersionUID = 1L;
+
+	public static final WrongAccountHolderException INSTANCE = new WrongAccountHolderException();
+
+	public WrongAccountHolderException() {
+		super(null, null, false, false);
+	}
+
 }
@@ -0,0 +1,32 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.InvalidCursorException;
+
+/**
+ * Opaque pagination cursors of the account listing
+ * A cursor wraps the last account number of the previous page
+ */
+final class AccountsCursor {
+
+	private AccountsCursor() {
+	}
+
+	static String encode(String accountNumber) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(accountNumber.getBytes(StandardCharsets.UTF_8));
+	}
+
+	static String decode(String cursor) {
+		if (cursor == null || cursor.isEmpty()) {
+			return null;
+		}
+		try {
+			return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidCursorException();
+		}
+	}
+
+}
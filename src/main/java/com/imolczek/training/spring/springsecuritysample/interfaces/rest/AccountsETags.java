@@ -0,0 +1,54 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Strong entity tags of the account resources, derived from the versions tracked by
+ * the AccountsService rather than from the serialized responses
+ * The tags also depend on the account holder, through the first 64 bits of the SHA-256
+ * of its id, so that a response cached for one user is not validated for another one
+ * sharing the same client
+ */
+final class AccountsETags {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final int HOLDER_DIGEST_BYTES = 8;
+
+	private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	});
+
+	private AccountsETags() {
+	}
+
+	static String list(String accountHolderId, Long version) {
+		return version == null ? null : tag("l", accountHolderId, version);
+	}
+
+	static String details(String accountHolderId, Long version) {
+		return version == null ? null : tag("d", accountHolderId, version);
+	}
+
+	private static String tag(String kind, String accountHolderId, long version) {
+		return "\"" + kind + Long.toString(version, 36) + "-" + holderDigest(accountHolderId) + "\"";
+	}
+
+	private static String holderDigest(String accountHolderId) {
+		MessageDigest sha256 = SHA_256.get();
+		sha256.reset();
+		byte[] digest = sha256.digest(accountHolderId.getBytes(StandardCharsets.UTF_8));
+		char[] hex = new char[HOLDER_DIGEST_BYTES * 2];
+		for (int i = 0; i < HOLDER_DIGEST_BYTES; i++) {
+			hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+			hex[2 * i + 1] = HEX[digest[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+}
@@ -0,0 +1,129 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Runs the account calls of AsyncSampleController off the web server threads
+ * - at most maxConcurrency calls run at once, the others wait in a queue of
+ *   queueCapacity calls, beyond which calls are rejected
+ * - on a JDK with virtual threads, each call gets its own virtual thread, and the
+ *   queued calls are virtual threads waiting for their turn; otherwise a pool of
+ *   maxConcurrency platform threads is used
+ * The virtual thread executor is looked up by reflection, the application being built
+ * for Java 8
+ */
+public class AsyncRequestExecutor implements Executor {
+
+	private final ExecutorService workers;
+	private final boolean virtualThreads;
+	private final int maxConcurrency;
+	private final int maxInFlight;
+	private final Semaphore running;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * @param maxConcurrency The maximum number of calls running at once
+	 * @param queueCapacity The maximum number of calls waiting to run
+	 * @param preferVirtualThreads Whether to use virtual threads when the JDK supports them
+	 */
+	public AsyncRequestExecutor(int maxConcurrency, int queueCapacity, boolean preferVirtualThreads) {
+		Assert.isTrue(maxConcurrency > 0, "maxConcurrency must be positive");
+		Assert.isTrue(queueCapacity >= 0, "queueCapacity cannot be negative");
+		ExecutorService virtual = preferVirtualThreads ? virtualThreadPerTaskExecutor() : null;
+		this.virtualThreads = virtual != null;
+		this.workers = virtual != null ? virtual
+				: Executors.newFixedThreadPool(maxConcurrency, new CustomizableThreadFactory("accounts-async-"));
+		this.maxConcurrency = maxConcurrency;
+		this.maxInFlight = maxConcurrency + queueCapacity;
+		this.running = new Semaphore(maxConcurrency);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		if (this.inFlight.incrementAndGet() > this.maxInFlight) {
+			reject();
+			throw new RejectedExecutionException("Too many account calls in progress");
+		}
+		try {
+			this.workers.execute(() -> run(task));
+		} catch (RejectedExecutionException e) {
+			reject();
+			throw e;
+		}
+	}
+
+	private void run(Runnable task) {
+		try {
+			// Never blocks the platform threads, as many as the permits
+			this.running.acquire();
+		} catch (InterruptedException e) {
+			// Shutting down
+			this.inFlight.decrementAndGet();
+			Thread.currentThread().interrupt();
+			return;
+		}
+		try {
+			task.run();
+		} finally {
+			this.running.release();
+			this.inFlight.decrementAndGet();
+			this.completed.increment();
+		}
+	}
+
+	private void reject() {
+		this.inFlight.decrementAndGet();
+		this.rejected.increment();
+	}
+
+	public void shutdown() {
+		this.workers.shutdownNow();
+	}
+
+	private static ExecutorService virtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			// Before Java 21, or a preview feature which is not enabled
+			return null;
+		}
+	}
+
+	public boolean isVirtualThreads() {
+		return this.virtualThreads;
+	}
+
+	/**
+	 * @return The number of calls running
+	 */
+	public int getActiveCount() {
+		return this.maxConcurrency - this.running.availablePermits();
+	}
+
+	/**
+	 * @return The number of calls waiting to run
+	 */
+	public int getQueueSize() {
+		return Math.max(0, this.inFlight.get() - getActiveCount());
+	}
+
+	public long getCompletedCount() {
+		return this.completed.sum();
+	}
+
+	public long getRejectedCount() {
+		return this.rejected.sum();
+	}
+
+}
@@ -0,0 +1,175 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutor;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.annotation.CurrentSecurityContext;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsBatchRequest;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsBatchResponse;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.Whoami;
+import com.imolczek.training.spring.springsecuritysample.services.AccountsService;
+
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+
+/**
+ * The sample API of SampleController, enabled with sample.web.async.enabled
+ * The calls to the account services run on the AsyncRequestExecutor: the web server
+ * thread is released as soon as the call is authorized, and the response is written
+ * by an async dispatch once the call completes
+ * - authorization (@PreAuthorize) and conditional GET are still handled on the web
+ *   server thread, so that denied and not modified requests never wait in the queue
+ * - the security context of the request is propagated to the executor threads
+ * - when the executor is full, requests are answered with a 503
+ * The async requests time out after spring.mvc.async.request-timeout
+ */
+@RestController
+@ConditionalOnWebApplication(type = Type.SERVLET)
+@ConditionalOnProperty(name = "sample.web.async.enabled", havingValue = "true")
+@RequestMapping("/sample/api/v1")
+public class AsyncSampleController {
+
+	private AccountsService accountsService;
+	private SampleEndpoints endpoints;
+	private Executor executor;
+
+	public AsyncSampleController(AccountsService accountsService, SampleEndpoints endpoints,
+			AsyncRequestExecutor executor) {
+		this.accountsService = accountsService;
+		this.endpoints = endpoints;
+		this.executor = new DelegatingSecurityContextExecutor(executor);
+	}
+
+	/**
+	 * This method has no authorization requirement
+	 * An anonymous user may call this method
+	 * @return pong
+	 */
+	@GetMapping("/ping")
+	public String ping() {
+		return "pong";
+	}
+
+	/**
+	 * Get info about the authenticated principal and his authorities
+	 * Answered on the web server thread, no account service being involved
+	 * @param jwt The authentication principal, obtained from the JWT access token
+	 * @param context The current security context
+	 * @return The authenticated user, the active authorities, as precomputed JSON
+	 */
+	@PreAuthorize("isAuthenticated()")
+	@GetMapping("/whoami")
+	@ApiResponses(@ApiResponse(code = 200, message = "OK", response = Whoami.class))
+	public ResponseEntity<byte[]> index(@AuthenticationPrincipal Jwt jwt, @CurrentSecurityContext SecurityContext context) {
+		return endpoints.whoami(jwt, context);
+	}
+
+	/**
+	 * List accounts, see SampleController
+	 * @param jwt The authentication principal, obtained from the JWT access token
+	 * @param cursor The opaque cursor of the requested page, taken from the previous page's Link header
+	 * @param limit The page size
+	 * @param request The current request, for conditional GET
+	 * @return List of accounts, null if not modified
+	 */
+	@PreAuthorize("hasAuthority('SCOPE_accounts:list') and hasAuthority('ROLE_customer')")
+	@GetMapping("/accounts")
+	public CompletableFuture<ResponseEntity<List<AccountResource>>> accounts(@AuthenticationPrincipal Jwt jwt,
+			@RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit,
+			ServletWebRequest request) {
+		String accountHolderId = jwt.getClaimAsString("sub");
+		endpoints.varyByAccept(request);
+		if (endpoints.notModified(request, AccountsETags.list(accountHolderId, accountsService.listVersion(accountHolderId)))) {
+			return null;
+		}
+		String afterAccountNumber = AccountsCursor.decode(cursor);
+		int pageSize = endpoints.pageSize(limit);
+		// The current request is not bound to the executor threads
+		UriComponentsBuilder currentRequest = ServletUriComponentsBuilder.fromRequest(request.getRequest());
+		return CompletableFuture.supplyAsync(
+				() -> endpoints.accounts(accountHolderId, afterAccountNumber, pageSize, currentRequest), executor);
+	}
+
+	/**
+	 * List accounts as newline delimited JSON, see SampleController
+	 * Streamed responses are already written asynchronously, by the application task executor
+	 * @param jwt The authentication principal, obtained from the JWT access token
+	 * @return Stream of accounts, one JSON document per line
+	 */
+	@PreAuthorize("hasAuthority('SCOPE_accounts:list') and hasAuthority('ROLE_customer')")
+	@GetMapping(value = "/accounts", produces = SampleController.APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> streamAccounts(@AuthenticationPrincipal Jwt jwt) {
+		return endpoints.streamAccounts(jwt.getClaimAsString("sub"));
+	}
+
+	/**
+	 * Account details, see SampleController
+	 * A WrongAccountHolderException completes the future, and is handled like a thrown one
+	 * @param jwt The authentication principal, obtained from the JWT access token
+	 * @param accountNumber The account number
+	 * @param request The current request, for conditional GET
+	 * @return The account, null if not modified
+	 */
+	@PreAuthorize("hasAuthority('SCOPE_accounts:details') and hasAuthority('ROLE_customer')")
+	@GetMapping("/accounts/{accountNumber}")
+	public CompletableFuture<AccountResource> accountDetails(@AuthenticationPrincipal Jwt jwt,
+			@PathVariable String accountNumber, ServletWebRequest request) {
+		String accountHolderId = jwt.getClaimAsString("sub");
+		// No version for someone else's account: details() then rejects the call
+		if (endpoints.notModified(request, AccountsETags.details(accountHolderId, accountsService.detailsVersion(accountNumber, accountHolderId)))) {
+			return null;
+		}
+		return CompletableFuture.supplyAsync(() -> accountsService.details(accountNumber, accountHolderId), executor);
+	}
+
+	/**
+	 * Details of several accounts, see SampleController
+	 * @param jwt The authentication principal, obtained from the JWT access token
+	 * @param request The account numbers
+	 * @return The details or error of each account
+	 */
+	@PreAuthorize("hasAuthority('SCOPE_accounts:details') and hasAuthority('ROLE_customer')")
+	@PostMapping("/accounts/details:batch")
+	public CompletableFuture<AccountDetailsBatchResponse> accountDetailsBatch(@AuthenticationPrincipal Jwt jwt,
+			@RequestBody AccountDetailsBatchRequest request) {
+		String accountHolderId = jwt.getClaimAsString("sub");
+		return CompletableFuture.supplyAsync(() -> endpoints.accountDetailsBatch(accountHolderId, request), executor);
+	}
+
+	/**
+	 * The executor is full: the client should come back later
+	 * @return A 503 response
+	 */
+	@ExceptionHandler(RejectedExecutionException.class)
+	public ResponseEntity<Void> executorFull() {
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+
+/**
+ * Writes the 403 response of a WrongAccountHolderException from precomputed bytes
+ * With @ResponseStatus alone, the response goes through sendError, and the error page
+ * is rendered by a second dispatch through the security filters and the ErrorController
+ * The exception is still exposed to the AuditInterceptor: DispatcherServlet sets it as a
+ * request attribute when a handler completes the response itself
+ */
+@RestControllerAdvice
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class DenialExceptionHandler {
+
+	private static final byte[] FORBIDDEN_BODY = ("{\"status\":403,\"error\":\"Forbidden\"}")
+			.getBytes(StandardCharsets.UTF_8);
+
+	@ExceptionHandler(WrongAccountHolderException.class)
+	public void wrongAccountHolder(HttpServletResponse response) throws IOException {
+		response.setStatus(HttpStatus.FORBIDDEN.value());
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setContentLength(FORBIDDEN_BODY.length);
+		response.getOutputStream().write(FORBIDDEN_BODY);
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.annotation.CurrentSecurityContext;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsBatchRequest;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsBatchResponse;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.Whoami;
+import com.imolczek.training.spring.springsecuritysample.services.ReactiveAccountsService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux flavour of SampleController, enabled with the "reactive" profile
+ * Same endpoints, same authorization rules
+ */
+@RestController
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+@RequestMapping("/sample/api/v1")
+public class ReactiveSampleController {
+
+	private ReactiveAccountsService accountsService;
+	private ObjectWriter accountWriter;
+
+	@Value("${sample.accounts.page.default-size:100}") int defaultPageSize;
+	@Value("${sample.accounts.page.max-size:1000}") int maxPageSize;
+
+	public ReactiveSampleController(ReactiveAccountsService accountsService, ObjectMapper objectMapper) {
+		this.accountsService = accountsService;
+		this.accountWriter = objectMapper.writerFor(AccountResource.class);
+	}
+
+	/**
+	 * This method has no authorization requirement
+	 * An anonymous user may call this method
+	 * @return pong
+	 */
+	@GetMapping("/ping")
+	public Mono<String> ping() {
+		return Mono.just("pong");
+	}
+
+	/**
+	 * Get info about the authenticated principal and his authorities 
+	 * @param jwt The authentication principal, obtained from the JWT access token
+	 * @param context The current security context
+	 * @return The authenticated user, the active authorities
+	 */
+	@PreAuthorize("isAuthenticated()")
+	@GetMapping("/whoami")
+	public Mono<Whoami> index(@AuthenticationPrincipal Jwt jwt, @CurrentSecurityContext SecurityContext context) {
+		Whoami response = new Whoami();
+		response.setFirstName(jwt.getClaimAsString("given_name"));
+		response.setLastName(jwt.getClaimAsString("family_name"));
+
+		List<String> roles = new ArrayList<>();
+		for (GrantedAuthority authority : context.getAuthentication().getAuthorities()) {
+			roles.add(authority.getAuthority());
+		}
+		response.setRoles(roles);
+
+		return Mono.just(response);
+	}
+
+	/**
+	 * List accounts, paginated like SampleController#accounts
+	 * The API client requires the accounts:list scope
+	 * The authenticated principal must have the customer role
+	 * @param jwt The authentication principal, obtained from the JWT access token 
+	 * @param cursor The opaque cursor of the requested page
+	 * @param limit The page size
+	 * @param request The current request, used to build the next page link
+	 * @return List of accounts
+	 */
+	@PreAuthorize("hasAuthority('SCOPE_accounts:list') and hasAuthority('ROLE_customer')")
+	@GetMapping("/accounts")
+	public Mono<ResponseEntity<List<AccountResource>>> accounts(@AuthenticationPrincipal Jwt jwt,
+			@RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit,
+			ServerHttpRequest request) {
+		int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+		return Mono.defer(() -> accountsService.page(jwt.getClaimAsString("sub"), AccountsCursor.decode(cursor), pageSize))
+				.map(page -> {
+					ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+					if (page.getNextAfter() != null) {
+						String next = UriComponentsBuilder.fromHttpRequest(request)
+								.replaceQueryParam("cursor", AccountsCursor.encode(page.getNextAfter()))
+								.replaceQueryParam("limit", pageSize)
+								.toUriString();
+						response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+					}
+					return response.body(page.getAccounts());
+				});
+	}
+
+	/**
+	 * List accounts as newline delimited JSON
+	 * @param jwt The authentication principal, obtained from the JWT access token 
+	 * @return Stream of accounts, one JSON document per line
+	 */
+	@PreAuthorize("hasAuthority('SCOPE_accounts:list') and hasAuthority('ROLE_customer')")
+	@GetMapping(value = "/accounts", produces = SampleController.APPLICATION_NDJSON_VALUE)
+	public Flux<String> streamAccounts(@AuthenticationPrincipal Jwt jwt) {
+		return accountsService.list(jwt.getClaimAsString("sub")).handle((account, sink) -> {
+			try {
+				sink.next(accountWriter.writeValueAsString(account) + "\n");
+			} catch (JsonProcessingException e) {
+				sink.error(e);
+			}
+		});
+	}
+
+	/**
+	 * Account details
+	 * The API client requires the accounts:details scope
+	 * The authenticated principal must have the customer role
+	 * @param jwt The authentication principal, obtained from the JWT access token
+	 * @param accountNumber The account number
+	 * @return The account
+	 */
+	@PreAuthorize("hasAuthority('SCOPE_accounts:details') and hasAuthority('ROLE_customer')")
+	@GetMapping("/accounts/{accountNumber}")
+	public Mono<AccountResource> accountDetails(@AuthenticationPrincipal Jwt jwt, @PathVariable String accountNumber) {
+		return accountsService.details(accountNumber, jwt.getClaimAsString("sub"));
+	}
+
+	/**
+	 * Details of several accounts, see SampleController#accountDetailsBatch
+	 * @param jwt The authentication principal, obtained from the JWT access token
+	 * @param request The account numbers
+	 * @return The details or error of each account
+	 */
+	@PreAuthorize("hasAuthority('SCOPE_accounts:details') and hasAuthority('ROLE_customer')")
+	@PostMapping("/accounts/details:batch")
+	public Mono<AccountDetailsBatchResponse> accountDetailsBatch(@AuthenticationPrincipal Jwt jwt,
+			@RequestBody AccountDetailsBatchRequest request) {
+		return accountsService.details(request.getAccountNumbers(), jwt.getClaimAsString("sub"))
+				.collectList()
+				.map(results -> {
+					AccountDetailsBatchResponse response = new AccountDetailsBatchResponse();
+					response.setResults(results);
+					return response;
+				});
+	}
+
+}
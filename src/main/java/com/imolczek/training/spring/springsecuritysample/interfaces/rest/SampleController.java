@@ -1,37 +1,59 @@
 package com.imolczek.training.spring.springsecuritysample.interfaces.rest;
 
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.annotation.CurrentSecurityContext;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsBatchRequest;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsBatchResponse;
 import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
 import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.Whoami;
 import com.imolczek.training.spring.springsecuritysample.services.AccountsService;
 
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+
+/**
+ * The sample API, each call being handled on the web server thread
+ * With sample.web.async.enabled, AsyncSampleController serves the same API instead
+ */
 @RestController
+@ConditionalOnWebApplication(type = Type.SERVLET)
+@ConditionalOnProperty(name = "sample.web.async.enabled", havingValue = "false", matchIfMissing = true)
 @RequestMapping("/sample/api/v1")
 public class SampleController {
 
 	private static Logger logger = LoggerFactory.getLogger(SampleController.class);
 
+	public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
 	private AccountsService accountsService;
-	
-	public SampleController(AccountsService accountsService) {
+	private SampleEndpoints endpoints;
+
+	public SampleController(AccountsService accountsService, SampleEndpoints endpoints) {
 		this.accountsService = accountsService;
+		this.endpoints = endpoints;
 	}
 	
 	/**
@@ -48,52 +70,95 @@ public class SampleController {
 	 * Get info about the authenticated principal and his authorities 
 	 * @param jwt The authentication principal, obtained from the JWT access token
 	 * @param context The current security context
-	 * @return The authenticated user, the active authorities
+	 * @return The authenticated user, the active authorities, as precomputed JSON
 	 */
 	@PreAuthorize("isAuthenticated()")
 	@GetMapping("/whoami")
-	public Whoami index(@AuthenticationPrincipal Jwt jwt, @CurrentSecurityContext SecurityContext context) {
-		Iterator<? extends GrantedAuthority> authorities = context.getAuthentication().getAuthorities().iterator();
-		
-		Whoami response = new Whoami();
-		response.setFirstName(jwt.getClaimAsString("given_name"));
-		response.setLastName(jwt.getClaimAsString("family_name"));
-
-		List<String> roles = new ArrayList<>();
-		while(authorities.hasNext()) {
-			roles.add(authorities.next().getAuthority());
-		}
-		response.setRoles(roles);
-
-		return response;
+	@ApiResponses(@ApiResponse(code = 200, message = "OK", response = Whoami.class))
+	public ResponseEntity<byte[]> index(@AuthenticationPrincipal Jwt jwt, @CurrentSecurityContext SecurityContext context) {
+		return endpoints.whoami(jwt, context);
 	}
 	
 	/**
 	 * List accounts
 	 * The API client requires the accounts:list scope
 	 * The authenticated principal must have the customer role
+	 * Accounts are paginated: when there are more accounts, the response carries a
+	 * Link header with the URL of the next page (rel="next")
+	 * Responses carry an ETag derived from the version of the holder's accounts: when the
+	 * client sends it back in If-None-Match and nothing changed, a 304 is returned without
+	 * loading the accounts
 	 * @param jwt The authentication principal, obtained from the JWT access token 
+	 * @param cursor The opaque cursor of the requested page, taken from the previous page's Link header
+	 * @param limit The page size
+	 * @param request The current request, for conditional GET
 	 * @return List of accounts
 	 */
 	@PreAuthorize("hasAuthority('SCOPE_accounts:list') and hasAuthority('ROLE_customer')")
 	@GetMapping("/accounts")
-	public List<AccountResource> accounts(@AuthenticationPrincipal Jwt jwt) {
-		List<AccountResource> accounts = accountsService.list(jwt.getClaimAsString("sub"));
-		return accounts;
+	public ResponseEntity<List<AccountResource>> accounts(@AuthenticationPrincipal Jwt jwt,
+			@RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit,
+			ServletWebRequest request) {
+		String accountHolderId = jwt.getClaimAsString("sub");
+		endpoints.varyByAccept(request);
+		if (endpoints.notModified(request, AccountsETags.list(accountHolderId, accountsService.listVersion(accountHolderId)))) {
+			return null;
+		}
+		return endpoints.accounts(accountHolderId, AccountsCursor.decode(cursor), endpoints.pageSize(limit),
+				ServletUriComponentsBuilder.fromCurrentRequest());
+	}
+
+	/**
+	 * List accounts as newline delimited JSON
+	 * Same authorization rules as the paginated listing
+	 * All the accounts are returned, each one being serialized and written as it is read
+	 * Both listings vary by Accept, the same URL serving JSON and NDJSON
+	 * @param jwt The authentication principal, obtained from the JWT access token 
+	 * @return Stream of accounts, one JSON document per line
+	 */
+	@PreAuthorize("hasAuthority('SCOPE_accounts:list') and hasAuthority('ROLE_customer')")
+	@GetMapping(value = "/accounts", produces = APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<StreamingResponseBody> streamAccounts(@AuthenticationPrincipal Jwt jwt) {
+		return endpoints.streamAccounts(jwt.getClaimAsString("sub"));
 	}
 
 	/**
 	 * Account details
 	 * The API client requires the accounts:details scope
 	 * The authenticated principal must have the customer role
+	 * Conditional GET is supported the same way as for the accounts list
 	 * @param jwt The authentication principal, obtained from the JWT access token
 	 * @param accountNumber The account number
+	 * @param request The current request, for conditional GET
 	 * @return List of accounts
 	 */
 	@PreAuthorize("hasAuthority('SCOPE_accounts:details') and hasAuthority('ROLE_customer')")
 	@GetMapping("/accounts/{accountNumber}")
-	public AccountResource accountDetails(@AuthenticationPrincipal Jwt jwt, @PathVariable String accountNumber) throws WrongAccountHolderException {
-		return accountsService.details(accountNumber, jwt.getClaimAsString("sub"));
+	public AccountResource accountDetails(@AuthenticationPrincipal Jwt jwt, @PathVariable String accountNumber,
+			ServletWebRequest request) throws WrongAccountHolderException {
+		String accountHolderId = jwt.getClaimAsString("sub");
+		// No version for someone else's account: details() then rejects the call
+		if (endpoints.notModified(request, AccountsETags.details(accountHolderId, accountsService.detailsVersion(accountNumber, accountHolderId)))) {
+			return null;
+		}
+		return accountsService.details(accountNumber, accountHolderId);
 	}
-	
+
+	/**
+	 * Details of several accounts
+	 * Same authorization rules as the single account details
+	 * Each account gets its own result: an account that does not belong to the
+	 * authenticated principal is reported with a 403 status without failing the others
+	 * A batch without account numbers, or with a null or blank one, is rejected with a 400
+	 * @param jwt The authentication principal, obtained from the JWT access token
+	 * @param request The account numbers
+	 * @return The details or error of each account
+	 */
+	@PreAuthorize("hasAuthority('SCOPE_accounts:details') and hasAuthority('ROLE_customer')")
+	@PostMapping("/accounts/details:batch")
+	public AccountDetailsBatchResponse accountDetailsBatch(@AuthenticationPrincipal Jwt jwt,
+			@RequestBody AccountDetailsBatchRequest request) {
+		return endpoints.accountDetailsBatch(jwt.getClaimAsString("sub"), request);
+	}
+
 }
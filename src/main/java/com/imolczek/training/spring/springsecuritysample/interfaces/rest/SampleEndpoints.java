@@ -0,0 +1,250 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsBatchRequest;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsBatchResponse;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.Whoami;
+import com.imolczek.training.spring.springsecuritysample.services.AccountDetailsBatchService;
+import com.imolczek.training.spring.springsecuritysample.services.AccountsPage;
+import com.imolczek.training.spring.springsecuritysample.services.AccountsService;
+
+/**
+ * The responses of the sample API, shared by SampleController and AsyncSampleController
+ * Nothing here depends on the thread handling the request: what comes from the current
+ * request is passed in by the controllers
+ */
+@Component
+@ConditionalOnWebApplication(type = Type.SERVLET)
+class SampleEndpoints {
+
+	private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(SampleController.APPLICATION_NDJSON_VALUE);
+
+	private AccountsService accountsService;
+	private AccountDetailsBatchService accountDetailsBatchService;
+	private ObjectWriter accountWriter;
+	private ObjectWriter whoamiWriter;
+	private String cacheControl;
+	private final Map<WhoamiKey, byte[]> whoamiResponses = new ConcurrentHashMap<>();
+
+	@Value("${sample.accounts.page.default-size:100}") int defaultPageSize;
+	@Value("${sample.accounts.page.max-size:1000}") int maxPageSize;
+	@Value("${sample.whoami.cache.max-entries:10000}") int whoamiMaxEntries;
+
+	SampleEndpoints(AccountsService accountsService, AccountDetailsBatchService accountDetailsBatchService,
+			ObjectMapper objectMapper, @Value("${sample.accounts.cache-control.max-age:0s}") Duration cacheMaxAge) {
+		this.accountsService = accountsService;
+		this.accountDetailsBatchService = accountDetailsBatchService;
+		this.accountWriter = objectMapper.writerFor(AccountResource.class)
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		this.whoamiWriter = objectMapper.writerFor(Whoami.class);
+		this.cacheControl = CacheControl.maxAge(cacheMaxAge).cachePrivate().mustRevalidate().getHeaderValue();
+	}
+
+	/**
+	 * The response only depends on the names and authorities of the principal: it is
+	 * serialized once for each distinct combination, and the same bytes are written for
+	 * every later call
+	 * @param jwt The authentication principal
+	 * @param context The current security context
+	 * @return The Whoami JSON document
+	 */
+	ResponseEntity<byte[]> whoami(Jwt jwt, SecurityContext context) {
+		WhoamiKey key = new WhoamiKey(jwt.getClaimAsString("given_name"), jwt.getClaimAsString("family_name"),
+				context.getAuthentication().getAuthorities());
+		byte[] body = whoamiResponses.get(key);
+		if (body == null) {
+			if (whoamiResponses.size() >= whoamiMaxEntries) {
+				evictWhoamiResponses();
+			}
+			body = serialize(key);
+			whoamiResponses.put(key, body);
+		}
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+	}
+
+	private byte[] serialize(WhoamiKey key) {
+		Iterator<? extends GrantedAuthority> authorities = key.authorities.iterator();
+
+		Whoami response = new Whoami();
+		response.setFirstName(key.firstName);
+		response.setLastName(key.lastName);
+
+		List<String> roles = new ArrayList<>();
+		while(authorities.hasNext()) {
+			roles.add(authorities.next().getAuthority());
+		}
+		response.setRoles(roles);
+
+		try {
+			return whoamiWriter.writeValueAsBytes(response);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Whoami cannot be serialized", e);
+		}
+	}
+
+	/**
+	 * Drops arbitrary responses until the cache is back under 90% of its maximum size
+	 */
+	private void evictWhoamiResponses() {
+		int target = whoamiMaxEntries - Math.max(1, whoamiMaxEntries / 10);
+		Iterator<byte[]> responses = whoamiResponses.values().iterator();
+		while (whoamiResponses.size() > target && responses.hasNext()) {
+			responses.next();
+			responses.remove();
+		}
+	}
+
+	/**
+	 * @param limit The requested page size, if any
+	 * @return The page size, within the configured bounds
+	 */
+	int pageSize(Integer limit) {
+		return limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+	}
+
+	/**
+	 * @param accountHolderId The authenticated account holder
+	 * @param afterAccountNumber The last account number of the previous page, null for the first page
+	 * @param pageSize The page size
+	 * @param currentRequest The URL of the current request, the next page's URL is derived from it
+	 * @return The page of accounts, with a Link header to the next page if there is one
+	 */
+	ResponseEntity<List<AccountResource>> accounts(String accountHolderId, String afterAccountNumber, int pageSize,
+			UriComponentsBuilder currentRequest) {
+		AccountsPage page = accountsService.page(accountHolderId, afterAccountNumber, pageSize);
+
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+		if (page.getNextAfter() != null) {
+			String next = currentRequest
+					.replaceQueryParam("cursor", AccountsCursor.encode(page.getNextAfter()))
+					.replaceQueryParam("limit", pageSize)
+					.toUriString();
+			response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+		}
+		return response.body(page.getAccounts());
+	}
+
+	/**
+	 * @param accountHolderId The authenticated account holder
+	 * @return The accounts as NDJSON, the same URL also serving them as a JSON page
+	 */
+	ResponseEntity<StreamingResponseBody> streamAccounts(String accountHolderId) {
+		StreamingResponseBody body = out -> {
+			try (Stream<AccountResource> accounts = accountsService.stream(accountHolderId);
+					JsonGenerator generator = accountWriter.getFactory().createGenerator(out)) {
+				generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+				generator.setRootValueSeparator(null);
+				Iterator<AccountResource> iterator = accounts.iterator();
+				while (iterator.hasNext()) {
+					accountWriter.writeValue(generator, iterator.next());
+					generator.writeRaw('\n');
+				}
+			}
+		};
+		return ResponseEntity.ok()
+				.contentType(APPLICATION_NDJSON)
+				.varyBy(HttpHeaders.ACCEPT, HttpHeaders.AUTHORIZATION)
+				.body(body);
+	}
+
+	AccountDetailsBatchResponse accountDetailsBatch(String accountHolderId, AccountDetailsBatchRequest request) {
+		AccountDetailsBatchResponse response = new AccountDetailsBatchResponse();
+		response.setResults(accountDetailsBatchService.details(request.getAccountNumbers(), accountHolderId));
+		return response;
+	}
+
+	/**
+	 * The accounts list is served as JSON or NDJSON depending on the Accept header
+	 * Writes to the response: must be called from the thread handling the request
+	 * @param request The current request
+	 */
+	void varyByAccept(ServletWebRequest request) {
+		request.getResponse().addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+	}
+
+	/**
+	 * Account resources are specific to the authenticated user: they may only be kept
+	 * in private caches, which must revalidate them with their ETag
+	 * Writes to the response: must be called from the thread handling the request
+	 * @param request The current request
+	 * @param etag The current ETag of the resource, null if unknown
+	 * @return true if the client's copy is up to date, in which case a 304 response is ready
+	 */
+	boolean notModified(ServletWebRequest request, String etag) {
+		if (etag == null) {
+			return false;
+		}
+		request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+		request.getResponse().addHeader(HttpHeaders.VARY, HttpHeaders.AUTHORIZATION);
+		return request.checkNotModified(etag);
+	}
+
+	/**
+	 * What a Whoami response is made of
+	 * The authorities of an authentication are an immutable list, compared element by element
+	 */
+	private static final class WhoamiKey {
+
+		private final String firstName;
+		private final String lastName;
+		private final Collection<? extends GrantedAuthority> authorities;
+		private final int hash;
+
+		WhoamiKey(String firstName, String lastName, Collection<? extends GrantedAuthority> authorities) {
+			this.firstName = firstName;
+			this.lastName = lastName;
+			this.authorities = authorities;
+			this.hash = Objects.hash(firstName, lastName, authorities);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof WhoamiKey)) {
+				return false;
+			}
+			WhoamiKey other = (WhoamiKey) obj;
+			return this.hash == other.hash && Objects.equals(this.firstName, other.firstName)
+					&& Objects.equals(this.lastName, other.lastName) && this.authorities.equals(other.authorities);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+	}
+
+}
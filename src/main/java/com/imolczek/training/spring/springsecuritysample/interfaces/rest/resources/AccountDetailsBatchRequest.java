@@ -0,0 +1,17 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources;
+
+import java.util.List;
+
+public class AccountDetailsBatchRequest {
+
+	private List<String> accountNumbers;
+
+	public List<String> getAccountNumbers() {
+		return accountNumbers;
+	}
+
+	public void setAccountNumbers(List<String> accountNumbers) {
+		this.accountNumbers = accountNumbers;
+	}
+
+}
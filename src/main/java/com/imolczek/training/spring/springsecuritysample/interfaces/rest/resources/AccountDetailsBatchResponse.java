@@ -0,0 +1,17 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources;
+
+import java.util.List;
+
+public class AccountDetailsBatchResponse {
+
+	private List<AccountDetailsResult> results;
+
+	public List<AccountDetailsResult> getResults() {
+		return results;
+	}
+
+	public void setResults(List<AccountDetailsResult> results) {
+		this.results = results;
+	}
+
+}
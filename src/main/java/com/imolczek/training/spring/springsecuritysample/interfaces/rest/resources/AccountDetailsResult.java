@@ -0,0 +1,65 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one item of a batch: either the account details, or an error
+ * The status is the HTTP status the single-account endpoint would have returned
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AccountDetailsResult {
+
+	private String accountNumber;
+	private int status;
+	private String error;
+	private AccountResource account;
+
+	public static AccountDetailsResult success(AccountResource account) {
+		AccountDetailsResult result = new AccountDetailsResult();
+		result.setAccountNumber(account.getAccountNumber());
+		result.setStatus(200);
+		result.setAccount(account);
+		return result;
+	}
+
+	public static AccountDetailsResult failure(String accountNumber, int status, String error) {
+		AccountDetailsResult result = new AccountDetailsResult();
+		result.setAccountNumber(accountNumber);
+		result.setStatus(status);
+		result.setError(error);
+		return result;
+	}
+
+	public String getAccountNumber() {
+		return accountNumber;
+	}
+
+	public void setAccountNumber(String accountNumber) {
+		this.accountNumber = accountNumber;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public void setStatus(int status) {
+		this.status = status;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	public AccountResource getAccount() {
+		return account;
+	}
+
+	public void setAccount(AccountResource account) {
+		this.account = account;
+	}
+
+}
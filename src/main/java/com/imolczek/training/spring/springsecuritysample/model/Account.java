@@ -4,6 +4,7 @@ public class Account {
 
 	private String accountNumber;
 	private String accountHolderId;
+	private long version;
 	
 	public String getAccountNumber() {
 		return accountNumber;
@@ -21,4 +22,15 @@ public class Account {
 		this.accountHolderId = accountHolderId;
 	}
 	
+	/**
+	 * @return A number that increases each time the account is written
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	public void setVersion(long version) {
+		this.version = version;
+	}
+	
 }
@@ -0,0 +1,60 @@
+package com.imolczek.training.spring.springsecuritysample.security;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.server.resource.BearerTokenError;
+import org.springframework.security.oauth2.server.resource.BearerTokenErrorCodes;
+import org.springframework.security.web.AuthenticationEntryPoint;
+
+/**
+ * Answers requests without a valid bearer token, like BearerTokenAuthenticationEntryPoint
+ * but with a WWW-Authenticate header precomputed for each RFC 6750 error code
+ * Unlike the default one, the header does not carry the message of the exception:
+ * nothing is built per rejected request, and the reason a forged token was rejected
+ * is not disclosed
+ */
+public class PrecomputedBearerTokenEntryPoint implements AuthenticationEntryPoint {
+
+	private static final String NO_TOKEN = "Bearer";
+
+	private static final Map<String, String> HEADERS = new HashMap<>();
+
+	static {
+		HEADERS.put(BearerTokenErrorCodes.INVALID_REQUEST, header(BearerTokenErrorCodes.INVALID_REQUEST,
+				"Invalid bearer token request", "https://tools.ietf.org/html/rfc6750#section-3.1"));
+		HEADERS.put(BearerTokenErrorCodes.INVALID_TOKEN, header(BearerTokenErrorCodes.INVALID_TOKEN,
+				"Invalid token", "https://tools.ietf.org/html/rfc6750#section-3.1"));
+		HEADERS.put(BearerTokenErrorCodes.INSUFFICIENT_SCOPE, header(BearerTokenErrorCodes.INSUFFICIENT_SCOPE,
+				"Insufficient scope", "https://tools.ietf.org/html/rfc6750#section-3.1"));
+	}
+
+	private static String header(String errorCode, String description, String uri) {
+		return "Bearer error=\"" + errorCode + "\", error_description=\"" + description + "\", error_uri=\"" + uri + "\"";
+	}
+
+	@Override
+	public void commence(HttpServletRequest request, HttpServletResponse response,
+			AuthenticationException authException) {
+		HttpStatus status = HttpStatus.UNAUTHORIZED;
+		String header = NO_TOKEN;
+		if (authException instanceof OAuth2AuthenticationException) {
+			OAuth2Error error = ((OAuth2AuthenticationException) authException).getError();
+			header = HEADERS.getOrDefault(error.getErrorCode(), NO_TOKEN);
+			if (error instanceof BearerTokenError) {
+				status = ((BearerTokenError) error).getHttpStatus();
+			}
+		}
+		response.addHeader(HttpHeaders.WWW_AUTHENTICATE, header);
+		response.setStatus(status.value());
+	}
+
+}
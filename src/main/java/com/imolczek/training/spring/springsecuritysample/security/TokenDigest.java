@@ -0,0 +1,46 @@
+package com.imolczek.training.spring.springsecuritysample.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * SHA-256 digest of a bearer token, usable as a map key so that caches of verified
+ * or introspected tokens do not keep the raw token values
+ */
+public final class TokenDigest {
+
+	private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	});
+
+	private final byte[] digest;
+	private final int hash;
+
+	private TokenDigest(byte[] digest) {
+		this.digest = digest;
+		this.hash = Arrays.hashCode(digest);
+	}
+
+	public static TokenDigest of(String token) {
+		MessageDigest sha256 = SHA_256.get();
+		sha256.reset();
+		return new TokenDigest(sha256.digest(token.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof TokenDigest && Arrays.equals(this.digest, ((TokenDigest) other).digest);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+}
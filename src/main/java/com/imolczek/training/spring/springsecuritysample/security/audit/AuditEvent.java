@@ -0,0 +1,77 @@
+package com.imolczek.training.spring.springsecuritysample.security.audit;
+
+/**
+ * One access decision taken on the API
+ * Events are created on the request thread, so they only hold references to values
+ * that already exist; formatting is left to the AuditLog writer thread
+ */
+public final class AuditEvent {
+
+	public enum Decision {
+		GRANTED, DENIED
+	}
+
+	private final long timestamp;
+	private final String subject;
+	private final String method;
+	private final String endpoint;
+	private final String accountNumber;
+	private final Decision decision;
+	private final String reason;
+	private final int status;
+
+	/**
+	 * @param timestamp Epoch milliseconds
+	 * @param subject The sub claim of the access token, null for anonymous calls
+	 * @param method The HTTP method
+	 * @param endpoint The matched request mapping, e.g. /sample/api/v1/accounts/{accountNumber}
+	 * @param accountNumber The account the call was about, if any
+	 * @param decision Whether access was granted
+	 * @param reason Why access was denied, null when granted
+	 * @param status The HTTP status of the response
+	 */
+	public AuditEvent(long timestamp, String subject, String method, String endpoint, String accountNumber,
+			Decision decision, String reason, int status) {
+		this.timestamp = timestamp;
+		this.subject = subject;
+		this.method = method;
+		this.endpoint = endpoint;
+		this.accountNumber = accountNumber;
+		this.decision = decision;
+		this.reason = reason;
+		this.status = status;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public String getSubject() {
+		return subject;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public String getAccountNumber() {
+		return accountNumber;
+	}
+
+	public Decision getDecision() {
+		return decision;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+}
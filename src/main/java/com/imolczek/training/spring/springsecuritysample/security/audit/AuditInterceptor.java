@@ -0,0 +1,113 @@
+package com.imolczek.training.spring.springsecuritysample.security.audit;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.security.audit.AuditEvent.Decision;
+
+/**
+ * Records the access decision of every call handled by a controller
+ * - an AccessDeniedException from method security is a denial, reported as
+ *   unauthenticated or insufficient_authority
+ * - a WrongAccountHolderException is a denial, reported as wrong_account_holder
+ * - anything else means access was granted, whatever the outcome of the call
+ * WrongAccountHolderException is turned into a 403 response by DenialExceptionHandler,
+ * in which case DispatcherServlet only exposes it as a request attribute
+ * Calls handled asynchronously, see AsyncSampleController, are recorded once the async
+ * dispatch completes, with the authentication of the initial dispatch
+ */
+public class AuditInterceptor implements AsyncHandlerInterceptor {
+
+	public static final String UNAUTHENTICATED = "unauthenticated";
+	public static final String INSUFFICIENT_AUTHORITY = "insufficient_authority";
+	public static final String WRONG_ACCOUNT_HOLDER = "wrong_account_holder";
+
+	private static final String ACCOUNT_NUMBER_VARIABLE = "accountNumber";
+	private static final String AUTHENTICATION_ATTRIBUTE = AuditInterceptor.class.getName() + ".AUTHENTICATION";
+
+	private final AuditLog auditLog;
+
+	public AuditInterceptor(AuditLog auditLog) {
+		this.auditLog = auditLog;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		if (!(handler instanceof HandlerMethod)) {
+			return;
+		}
+		Throwable failure = ex != null ? ex : (Throwable) request.getAttribute(DispatcherServlet.EXCEPTION_ATTRIBUTE);
+		String subject = subject(authentication(request));
+
+		Decision decision = Decision.GRANTED;
+		String reason = null;
+		int status = response.getStatus();
+		if (failure instanceof AccessDeniedException) {
+			decision = Decision.DENIED;
+			boolean unauthenticated = subject == null;
+			reason = unauthenticated ? UNAUTHENTICATED : INSUFFICIENT_AUTHORITY;
+			// The response is only committed later on, by the ExceptionTranslationFilter
+			status = unauthenticated ? HttpStatus.UNAUTHORIZED.value() : HttpStatus.FORBIDDEN.value();
+		} else if (failure instanceof WrongAccountHolderException) {
+			decision = Decision.DENIED;
+			reason = WRONG_ACCOUNT_HOLDER;
+		}
+
+		this.auditLog.record(new AuditEvent(System.currentTimeMillis(), subject, request.getMethod(),
+				endpoint(request), accountNumber(request), decision, reason, status));
+	}
+
+	/**
+	 * The async dispatch which completes the call does not go through the bearer token
+	 * authentication again: the authentication is kept for it in a request attribute
+	 */
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+			Object handler) {
+		request.setAttribute(AUTHENTICATION_ATTRIBUTE, SecurityContextHolder.getContext().getAuthentication());
+	}
+
+	/**
+	 * @param request The current request, possibly an async dispatch
+	 * @return The authentication of the request, null if there is none
+	 */
+	static Authentication authentication(HttpServletRequest request) {
+		Object authentication = request.getAttribute(AUTHENTICATION_ATTRIBUTE);
+		return authentication instanceof Authentication ? (Authentication) authentication
+				: SecurityContextHolder.getContext().getAuthentication();
+	}
+
+	static String subject(Authentication authentication) {
+		if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+			return null;
+		}
+		Object principal = authentication.getPrincipal();
+		return principal instanceof Jwt ? ((Jwt) principal).getSubject() : authentication.getName();
+	}
+
+	static String endpoint(HttpServletRequest request) {
+		Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		return pattern != null ? pattern.toString() : request.getRequestURI();
+	}
+
+	private static String accountNumber(HttpServletRequest request) {
+		Object variables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+		return variables instanceof Map ? (String) ((Map<?, ?>) variables).get(ACCOUNT_NUMBER_VARIABLE) : null;
+	}
+
+}
@@ -0,0 +1,270 @@
+package com.imolczek.training.spring.springsecuritysample.security.audit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Append-only audit trail of the access decisions, written as NDJSON
+ * Request threads only enqueue events in a lock-free ring buffer; a single writer thread
+ * drains it in batches, serializes the batch and appends it to the current file with
+ * one FileChannel write
+ * The current file is rolled once it exceeds the maximum size, and the oldest rolled
+ * files are deleted beyond the maximum history
+ * A failed roll is logged and the writer keeps appending to the current file, rolling
+ * it again after the next batch
+ * Backpressure: request threads never wait for the writer; when the buffer is full
+ * the new event is dropped and counted, so that an audit backlog can not turn into
+ * API latency
+ */
+public class AuditLog implements AutoCloseable {
+
+	private static Logger logger = LoggerFactory.getLogger(AuditLog.class);
+
+	static final String CURRENT_FILE_NAME = "audit.ndjson";
+	private static final String ROLLED_FILE_PREFIX = "audit-";
+	private static final DateTimeFormatter ROLLED_FILE_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
+			.withZone(ZoneOffset.UTC);
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private final Path directory;
+	private final long maxFileSize;
+	private final int maxHistory;
+	private final int batchSize;
+	private final long idleWaitNanos;
+	private final AuditRingBuffer<AuditEvent> buffer;
+	private final LongAdder written = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final Thread writer;
+	private final ByteArrayOutputStream batchBytes = new ByteArrayOutputStream(64 * 1024);
+	private FileChannel channel;
+	private long fileSize;
+	private volatile boolean running;
+	private Clock clock = Clock.systemUTC();
+
+	/**
+	 * @param directory Where audit files are written
+	 * @param bufferCapacity Number of events the buffer can hold, a power of two
+	 * @param batchSize Maximum number of events per write
+	 * @param maxFileSize Size in bytes past which the current file is rolled
+	 * @param maxHistory Number of rolled files to keep
+	 * @param idleWait How long the writer sleeps when there is nothing to write
+	 */
+	public AuditLog(Path directory, int bufferCapacity, int batchSize, long maxFileSize, int maxHistory,
+			Duration idleWait) {
+		Assert.notNull(directory, "directory cannot be null");
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+		Assert.isTrue(maxFileSize > 0, "maxFileSize must be positive");
+		Assert.isTrue(maxHistory >= 0, "maxHistory cannot be negative");
+		this.directory = directory;
+		this.buffer = new AuditRingBuffer<>(bufferCapacity);
+		this.batchSize = batchSize;
+		this.maxFileSize = maxFileSize;
+		this.maxHistory = maxHistory;
+		this.idleWaitNanos = idleWait.toNanos();
+		this.writer = new Thread(this::writeLoop, "audit-writer");
+		this.writer.setDaemon(true);
+	}
+
+	public void start() throws IOException {
+		Files.createDirectories(this.directory);
+		openCurrentFile();
+		this.running = true;
+		this.writer.start();
+	}
+
+	/**
+	 * Enqueues an event, without ever blocking
+	 * @param event The event to record
+	 * @return false if the event was dropped because the buffer was full
+	 */
+	public boolean record(AuditEvent event) {
+		if (this.buffer.offer(event)) {
+			return true;
+		}
+		this.dropped.increment();
+		return false;
+	}
+
+	private void writeLoop() {
+		List<AuditEvent> batch = new ArrayList<>(this.batchSize);
+		while (this.running) {
+			if (!drain(batch)) {
+				LockSupport.parkNanos(this.idleWaitNanos);
+			}
+		}
+		// Flush what is left once stopped
+		boolean drained;
+		do {
+			drained = drain(batch);
+		} while (drained);
+	}
+
+	/**
+	 * @return true if some events were written
+	 */
+	private boolean drain(List<AuditEvent> batch) {
+		AuditEvent event;
+		while (batch.size() < this.batchSize && (event = this.buffer.poll()) != null) {
+			batch.add(event);
+		}
+		if (batch.isEmpty()) {
+			return false;
+		}
+		try {
+			write(batch);
+			this.written.add(batch.size());
+		} catch (IOException | RuntimeException e) {
+			this.dropped.add(batch.size());
+			logger.error("Unable to write {} audit events to {}", batch.size(), this.directory, e);
+		} finally {
+			batch.clear();
+		}
+		if (this.fileSize >= this.maxFileSize) {
+			roll();
+		}
+		return true;
+	}
+
+	private void write(List<AuditEvent> batch) throws IOException {
+		this.batchBytes.reset();
+		try (JsonGenerator generator = JSON.createGenerator(this.batchBytes, JsonEncoding.UTF8)) {
+			generator.setRootValueSeparator(null);
+			for (AuditEvent event : batch) {
+				writeEvent(generator, event);
+				generator.writeRaw('\n');
+			}
+		}
+
+		if (!this.channel.isOpen()) {
+			// A previous roll could not reopen the current file
+			openCurrentFile();
+		}
+		ByteBuffer bytes = ByteBuffer.wrap(this.batchBytes.toByteArray());
+		while (bytes.hasRemaining()) {
+			this.fileSize += this.channel.write(bytes);
+		}
+	}
+
+	private static void writeEvent(JsonGenerator generator, AuditEvent event) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("ts", Instant.ofEpochMilli(event.getTimestamp()).toString());
+		if (event.getSubject() != null) {
+			generator.writeStringField("sub", event.getSubject());
+		}
+		generator.writeStringField("method", event.getMethod());
+		generator.writeStringField("endpoint", event.getEndpoint());
+		if (event.getAccountNumber() != null) {
+			generator.writeStringField("account", event.getAccountNumber());
+		}
+		generator.writeStringField("decision", event.getDecision().name());
+		if (event.getReason() != null) {
+			generator.writeStringField("reason", event.getReason());
+		}
+		generator.writeNumberField("status", event.getStatus());
+		generator.writeEndObject();
+	}
+
+	private void openCurrentFile() throws IOException {
+		this.channel = FileChannel.open(this.directory.resolve(CURRENT_FILE_NAME),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.fileSize = this.channel.size();
+	}
+
+	/**
+	 * Rolls the current file, the written events being safe whatever happens: the
+	 * current file is always reopened, under its new name or as it was
+	 */
+	private void roll() {
+		Path rolled = this.directory.resolve(ROLLED_FILE_PREFIX + ROLLED_FILE_SUFFIX.format(this.clock.instant()) + ".ndjson");
+		try {
+			this.channel.force(false);
+			this.channel.close();
+			Files.move(this.directory.resolve(CURRENT_FILE_NAME), rolled, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			logger.error("Unable to roll the audit file to {}", rolled, e);
+		} finally {
+			try {
+				openCurrentFile();
+			} catch (IOException e) {
+				logger.error("Unable to reopen the audit file in {}", this.directory, e);
+			}
+		}
+		try {
+			deleteOldFiles();
+		} catch (IOException | RuntimeException e) {
+			logger.error("Unable to delete the old audit files in {}", this.directory, e);
+		}
+	}
+
+	private void deleteOldFiles() throws IOException {
+		List<Path> rolledFiles = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, ROLLED_FILE_PREFIX + "*.ndjson")) {
+			files.forEach(rolledFiles::add);
+		}
+		// Rolled file names sort chronologically
+		rolledFiles.sort(null);
+		for (int i = 0; i < rolledFiles.size() - this.maxHistory; i++) {
+			Files.deleteIfExists(rolledFiles.get(i));
+		}
+	}
+
+	/**
+	 * Stops the writer once the events already enqueued are written
+	 */
+	@Override
+	public void close() throws IOException, InterruptedException {
+		if (!this.running) {
+			return;
+		}
+		this.running = false;
+		LockSupport.unpark(this.writer);
+		this.writer.join(TimeUnit.SECONDS.toMillis(10));
+		if (this.channel.isOpen()) {
+			this.channel.force(false);
+			this.channel.close();
+		}
+	}
+
+	public void setClock(Clock clock) {
+		Assert.notNull(clock, "clock cannot be null");
+		this.clock = clock;
+	}
+
+	public long getWrittenCount() {
+		return this.written.sum();
+	}
+
+	public long getDroppedCount() {
+		return this.dropped.sum();
+	}
+
+	public int getPendingCount() {
+		return this.buffer.size();
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.imolczek.training.spring.springsecuritysample.security.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.util.Assert;
+
+/**
+ * Bounded multi-producer single-consumer queue, lock-free on both sides
+ * Each slot carries a sequence number telling whether it is free for the producer
+ * claiming position p (sequence == p) or published for the consumer (sequence == p + 1)
+ * Producers only contend on the CAS claiming a position, and offer never waits:
+ * when the buffer is full it returns false and the caller decides what to drop
+ * @param <E> Type of the elements
+ */
+final class AuditRingBuffer<E> {
+
+	private final int mask;
+	private final AtomicReferenceArray<E> slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	// Only written by the consumer thread, volatile so that size() can be read by others
+	private volatile long head;
+
+	AuditRingBuffer(int capacity) {
+		Assert.isTrue(capacity > 1 && Integer.bitCount(capacity) == 1, "capacity must be a power of two");
+		this.mask = capacity - 1;
+		this.slots = new AtomicReferenceArray<>(capacity);
+		this.sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			this.sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * @param element The element to enqueue
+	 * @return false if the buffer was full, in which case the element was not enqueued
+	 */
+	boolean offer(E element) {
+		long position = this.tail.get();
+		while (true) {
+			int index = (int) position & this.mask;
+			long gap = this.sequences.get(index) - position;
+			if (gap == 0) {
+				if (this.tail.compareAndSet(position, position + 1)) {
+					this.slots.lazySet(index, element);
+					this.sequences.set(index, position + 1);
+					return true;
+				}
+				position = this.tail.get();
+			} else if (gap < 0) {
+				// The consumer has not freed this slot yet: the buffer is full
+				return false;
+			} else {
+				position = this.tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Must only be called from the consumer thread
+	 * @return The oldest published element, or null if there is none
+	 */
+	E poll() {
+		int index = (int) this.head & this.mask;
+		if (this.sequences.get(index) != this.head + 1) {
+			return null;
+		}
+		E element = this.slots.get(index);
+		this.slots.lazySet(index, null);
+		this.sequences.set(index, this.head + this.mask + 1);
+		this.head++;
+		return element;
+	}
+
+	int capacity() {
+		return this.mask + 1;
+	}
+
+	/**
+	 * @return An estimate of the number of elements waiting for the consumer
+	 */
+	int size() {
+		return (int) Math.max(0, Math.min(this.tail.get() - this.head, capacity()));
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.imolczek.training.spring.springsecuritysample.security.audit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsBatchResponse;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsResult;
+import com.imolczek.training.spring.springsecuritysample.security.audit.AuditEvent.Decision;
+import com.imolczek.training.spring.springsecuritysample.services.AccountDetailsBatchService;
+
+/**
+ * A batch details call is granted as a whole but may still be denied some of its
+ * accounts: this advice records one denial per account reported as held by someone else
+ * The call itself is recorded by the AuditInterceptor
+ */
+@ControllerAdvice
+@ConditionalOnWebApplication(type = Type.SERVLET)
+@ConditionalOnProperty(name = "sample.audit.enabled", havingValue = "true")
+public class BatchAuditResponseBodyAdvice implements ResponseBodyAdvice<AccountDetailsBatchResponse> {
+
+	private final AuditLog auditLog;
+
+	public BatchAuditResponseBodyAdvice(AuditLog auditLog) {
+		this.auditLog = auditLog;
+	}
+
+	@Override
+	public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+		return AccountDetailsBatchResponse.class.isAssignableFrom(returnType.getParameterType());
+	}
+
+	@Override
+	public AccountDetailsBatchResponse beforeBodyWrite(AccountDetailsBatchResponse body, MethodParameter returnType,
+			MediaType selectedContentType, Class<? extends HttpMessageConverter<?>> selectedConverterType,
+			ServerHttpRequest request, ServerHttpResponse response) {
+		if (body == null || body.getResults() == null || !(request instanceof ServletServerHttpRequest)) {
+			return body;
+		}
+		String subject = null;
+		String endpoint = null;
+		long now = System.currentTimeMillis();
+		for (AccountDetailsResult result : body.getResults()) {
+			if (!AccountDetailsBatchService.WRONG_ACCOUNT_HOLDER.equals(result.getError())) {
+				continue;
+			}
+			if (endpoint == null) {
+				HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+				subject = AuditInterceptor.subject(AuditInterceptor.authentication(servletRequest));
+				endpoint = AuditInterceptor.endpoint(servletRequest);
+			}
+			this.auditLog.record(new AuditEvent(now, subject, request.getMethodValue(), endpoint,
+					result.getAccountNumber(), Decision.DENIED, AuditInterceptor.WRONG_ACCOUNT_HOLDER,
+					HttpStatus.FORBIDDEN.value()));
+		}
+		return body;
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.imolczek.training.spring.springsecuritysample.security.introspection;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionException;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+import org.springframework.util.Assert;
+
+import com.imolczek.training.spring.springsecuritysample.security.TokenDigest;
+
+/**
+ * An OpaqueTokenIntrospector that remembers the active tokens it has introspected
+ * Without it, every request would cost a round trip to the introspection endpoint
+ * A result is served from the cache until the token expires or until the TTL has
+ * passed, whichever comes first: the TTL bounds how long a token revoked at the IDP
+ * keeps being accepted
+ * Concurrent introspections of the same token are coalesced into a single call, so
+ * that a client firing parallel requests with a fresh token does not multiply calls
+ * Inactive tokens and failures are never cached
+ */
+public class CachingOpaqueTokenIntrospector implements OpaqueTokenIntrospector {
+
+	private final OpaqueTokenIntrospector delegate;
+	private final int maxSize;
+	private final Duration ttl;
+	private final Map<TokenDigest, CachedPrincipal> cache = new ConcurrentHashMap<>();
+	private final Map<TokenDigest, CompletableFuture<OAuth2AuthenticatedPrincipal>> inFlight = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private Clock clock = Clock.systemUTC();
+
+	public CachingOpaqueTokenIntrospector(OpaqueTokenIntrospector delegate, int maxSize, Duration ttl) {
+		Assert.notNull(delegate, "delegate cannot be null");
+		Assert.isTrue(maxSize > 0, "maxSize must be positive");
+		Assert.isTrue(ttl != null && !ttl.isNegative() && !ttl.isZero(), "ttl must be a positive duration");
+		this.delegate = delegate;
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+	}
+
+	@Override
+	public OAuth2AuthenticatedPrincipal introspect(String token) {
+		TokenDigest key = TokenDigest.of(token);
+		OAuth2AuthenticatedPrincipal cached = lookup(key);
+		if (cached != null) {
+			this.hits.increment();
+			return cached;
+		}
+
+		CompletableFuture<OAuth2AuthenticatedPrincipal> introspection = new CompletableFuture<>();
+		CompletableFuture<OAuth2AuthenticatedPrincipal> pending = this.inFlight.putIfAbsent(key, introspection);
+		if (pending != null) {
+			this.coalesced.increment();
+			return await(pending);
+		}
+
+		try {
+			// Another thread may have completed the same introspection in the meantime
+			cached = lookup(key);
+			if (cached != null) {
+				this.hits.increment();
+				introspection.complete(cached);
+				return cached;
+			}
+			this.misses.increment();
+			OAuth2AuthenticatedPrincipal principal = this.delegate.introspect(token);
+			store(key, principal);
+			introspection.complete(principal);
+			return principal;
+		} catch (RuntimeException e) {
+			introspection.completeExceptionally(e);
+			throw e;
+		} finally {
+			this.inFlight.remove(key, introspection);
+		}
+	}
+
+	private OAuth2AuthenticatedPrincipal lookup(TokenDigest key) {
+		CachedPrincipal cached = this.cache.get(key);
+		if (cached == null) {
+			return null;
+		}
+		if (this.clock.instant().isBefore(cached.expiresAt)) {
+			return cached.principal;
+		}
+		this.cache.remove(key, cached);
+		return null;
+	}
+
+	private void store(TokenDigest key, OAuth2AuthenticatedPrincipal principal) {
+		Instant now = this.clock.instant();
+		Instant expiresAt = now.plus(this.ttl);
+		Object exp = principal.getAttribute(OAuth2IntrospectionClaimNames.EXPIRES_AT);
+		if (exp instanceof Instant && ((Instant) exp).isBefore(expiresAt)) {
+			expiresAt = (Instant) exp;
+		}
+		if (!now.isBefore(expiresAt)) {
+			return;
+		}
+		if (this.cache.size() >= this.maxSize) {
+			evict(now);
+		}
+		this.cache.put(key, new CachedPrincipal(principal, expiresAt));
+	}
+
+	/**
+	 * Drops every expired entry, then arbitrary entries until the cache is back
+	 * under 90% of its maximum size
+	 */
+	private void evict(Instant now) {
+		int target = this.maxSize - Math.max(1, this.maxSize / 10);
+		this.cache.values().removeIf(cached -> !now.isBefore(cached.expiresAt));
+		Iterator<CachedPrincipal> values = this.cache.values().iterator();
+		while (this.cache.size() > target && values.hasNext()) {
+			values.next();
+			values.remove();
+		}
+	}
+
+	private static OAuth2AuthenticatedPrincipal await(CompletableFuture<OAuth2AuthenticatedPrincipal> pending) {
+		try {
+			return pending.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new OAuth2IntrospectionException("Token introspection failed", e.getCause());
+		}
+	}
+
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * @return How many introspections waited for the same token's introspection in progress
+	 */
+	public long getCoalescedCount() {
+		return this.coalesced.sum();
+	}
+
+	public int size() {
+		return this.cache.size();
+	}
+
+	public void setClock(Clock clock) {
+		Assert.notNull(clock, "clock cannot be null");
+		this.clock = clock;
+	}
+
+	private static final class CachedPrincipal {
+
+		private final OAuth2AuthenticatedPrincipal principal;
+		private final Instant expiresAt;
+
+		CachedPrincipal(OAuth2AuthenticatedPrincipal principal, Instant expiresAt) {
+			this.principal = principal;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+
+}
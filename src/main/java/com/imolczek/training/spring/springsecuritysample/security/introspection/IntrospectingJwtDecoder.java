@@ -0,0 +1,55 @@
+package com.imolczek.training.spring.springsecuritysample.security.introspection;
+
+import java.util.Map;
+
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionException;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+
+/**
+ * Accepts opaque access tokens in place of JWTs, by introspecting them
+ * The introspected claims are exposed as a Jwt so that the rest of the application
+ * (claims to authorities mapping, @AuthenticationPrincipal Jwt arguments, rate limiting,
+ * audit) works the same whatever the kind of token
+ * The resulting Jwt has no signature: it only carries the claims vouched for by the
+ * introspection endpoint
+ */
+public class IntrospectingJwtDecoder implements JwtDecoder {
+
+	/**
+	 * How NimbusOpaqueTokenIntrospector reports an inactive token, which is otherwise
+	 * indistinguishable from an error response of the introspection endpoint
+	 */
+	static final String INACTIVE_TOKEN_MESSAGE = "Provided token isn't active";
+
+	private final OpaqueTokenIntrospector introspector;
+
+	public IntrospectingJwtDecoder(OpaqueTokenIntrospector introspector) {
+		this.introspector = introspector;
+	}
+
+	@Override
+	public Jwt decode(String token) throws JwtException {
+		OAuth2AuthenticatedPrincipal principal;
+		try {
+			principal = this.introspector.introspect(token);
+		} catch (OAuth2IntrospectionException e) {
+			if (INACTIVE_TOKEN_MESSAGE.equals(e.getMessage())) {
+				throw new JwtException("Inactive token");
+			}
+			throw new JwtException("Token introspection failed", e.getCause() == null ? e : e.getCause());
+		}
+		Map<String, Object> attributes = principal.getAttributes();
+		if (attributes.isEmpty()) {
+			throw new JwtException("Introspection returned no claims");
+		}
+		return Jwt.withTokenValue(token)
+				.header("alg", "none")
+				.claims(claims -> claims.putAll(attributes))
+				.build();
+	}
+
+}
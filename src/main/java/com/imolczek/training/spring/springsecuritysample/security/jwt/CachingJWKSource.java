@@ -0,0 +1,291 @@
+package com.imolczek.training.spring.springsecuritysample.security.jwt;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.DefaultResourceRetriever;
+import com.nimbusds.jose.util.ResourceRetriever;
+
+/**
+ * A JWK source that never fetches keys on the request thread in the nominal case
+ * The current key set is held as an immutable snapshot indexed by kid, and is
+ * refreshed in the background before it goes stale
+ * All fetches run on the refresh thread, one at a time: a lookup of an unknown kid
+ * (typically right after a key rotation) waits for the fetch in progress, or triggers
+ * one and waits for it
+ * Only the fetches triggered by unknown kids are limited to one per minimum refetch
+ * interval, so that a flood of forged kids cannot turn into a refetch storm against the IDP
+ * When the IDP is unreachable, the last known keys keep being served
+ * The JWK set location may be an http(s) URI or a file URI, which makes it easy to test
+ * against a local JWKS document
+ */
+public class CachingJWKSource implements JWKSource<SecurityContext>, AutoCloseable {
+
+	private static Logger logger = LoggerFactory.getLogger(CachingJWKSource.class);
+
+	/**
+	 * How long a lookup waits for a fetch, longer than the timeouts of the default retriever
+	 */
+	private static final long FETCH_WAIT_MILLIS = 5000;
+
+	private final URI jwkSetUri;
+	private final Duration refreshInterval;
+	private final Duration minRefetchInterval;
+	private final ResourceRetriever resourceRetriever;
+	private final ScheduledExecutorService scheduler;
+	private CompletableFuture<KeySnapshot> inFlight;
+	private long lastKidRefetch = Long.MIN_VALUE;
+	private final LongAdder fetchCount = new LongAdder();
+	private final LongAdder fetchFailureCount = new LongAdder();
+	private final LongAdder unknownKidCount = new LongAdder();
+	private volatile KeySnapshot snapshot = KeySnapshot.EMPTY;
+	private Clock clock = Clock.systemUTC();
+
+	public CachingJWKSource(URI jwkSetUri, Duration refreshInterval, Duration minRefetchInterval) {
+		this(jwkSetUri, refreshInterval, minRefetchInterval, new DefaultResourceRetriever(2000, 2000, 512 * 1024));
+	}
+
+	public CachingJWKSource(URI jwkSetUri, Duration refreshInterval, Duration minRefetchInterval,
+			ResourceRetriever resourceRetriever) {
+		Assert.notNull(jwkSetUri, "jwkSetUri cannot be null");
+		Assert.isTrue(!refreshInterval.isNegative() && !refreshInterval.isZero(), "refreshInterval must be positive");
+		Assert.isTrue(!minRefetchInterval.isNegative(), "minRefetchInterval cannot be negative");
+		this.jwkSetUri = jwkSetUri;
+		this.refreshInterval = refreshInterval;
+		this.minRefetchInterval = minRefetchInterval;
+		this.resourceRetriever = resourceRetriever;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "jwk-set-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts the background refresh
+	 * The first fetch runs asynchronously so that an unreachable IDP does not prevent
+	 * the application from starting
+	 * @return A future completed once the first fetch attempt is over
+	 */
+	public CompletableFuture<Void> start() {
+		long period = this.refreshInterval.toMillis();
+		CompletableFuture<Void> firstFetch = fetch().handle((snapshot, failure) -> null);
+		this.scheduler.scheduleWithFixedDelay(this::fetch, period, period, TimeUnit.MILLISECONDS);
+		return firstFetch;
+	}
+
+	@Override
+	public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) throws KeySourceException {
+		KeySnapshot current = this.snapshot;
+		List<JWK> matches = current.select(jwkSelector);
+		if (!matches.isEmpty() || !isKidLookup(jwkSelector)) {
+			return matches;
+		}
+
+		// Unknown kid: the IDP may have rotated its keys since the last refresh
+		this.unknownKidCount.increment();
+		CompletableFuture<KeySnapshot> pending = kidRefetch();
+		if (pending != null) {
+			try {
+				pending.get(FETCH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (ExecutionException e) {
+				// Already logged by the fetch
+			} catch (TimeoutException e) {
+				logger.warn("Gave up waiting for the JWK set from {}, keeping the current keys", this.jwkSetUri);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		KeySnapshot refreshed = this.snapshot;
+		return refreshed == current ? matches : refreshed.select(jwkSelector);
+	}
+
+	private boolean isKidLookup(JWKSelector jwkSelector) {
+		Set<String> kids = jwkSelector.getMatcher().getKeyIDs();
+		return kids != null && !kids.isEmpty();
+	}
+
+	/**
+	 * @return The fetch in progress, else a new fetch if the minimum refetch interval
+	 * has elapsed since the last one triggered by an unknown kid, else null
+	 */
+	private synchronized CompletableFuture<KeySnapshot> kidRefetch() {
+		if (this.inFlight != null) {
+			return this.inFlight;
+		}
+		long now = this.clock.millis();
+		if (this.lastKidRefetch != Long.MIN_VALUE && now - this.lastKidRefetch < this.minRefetchInterval.toMillis()) {
+			return null;
+		}
+		this.lastKidRefetch = now;
+		return fetch();
+	}
+
+	/**
+	 * Starts a fetch on the refresh thread, unless one is already in progress
+	 * Concurrent callers do not pile up on the IDP: they all get the fetch in progress
+	 * @return The fetch, completed with the new snapshot once it is published
+	 */
+	private synchronized CompletableFuture<KeySnapshot> fetch() {
+		if (this.inFlight == null) {
+			CompletableFuture<KeySnapshot> fetch = new CompletableFuture<>();
+			this.inFlight = fetch;
+			this.scheduler.execute(() -> load(fetch));
+		}
+		return this.inFlight;
+	}
+
+	/**
+	 * Loads the JWK set and publishes it as the new snapshot
+	 * @param fetch The fetch to complete
+	 */
+	private void load(CompletableFuture<KeySnapshot> fetch) {
+		try {
+			JWKSet jwkSet = load();
+			KeySnapshot loaded = new KeySnapshot(jwkSet, this.clock.instant());
+			this.snapshot = loaded;
+			this.fetchCount.increment();
+			logger.debug("Loaded {} keys from {}", jwkSet.getKeys().size(), this.jwkSetUri);
+			fetchDone();
+			fetch.complete(loaded);
+		} catch (IOException | ParseException | RuntimeException e) {
+			this.fetchFailureCount.increment();
+			logger.warn("Unable to fetch the JWK set from {}, keeping the current keys", this.jwkSetUri, e);
+			fetchDone();
+			fetch.completeExceptionally(e);
+		}
+	}
+
+	private synchronized void fetchDone() {
+		this.inFlight = null;
+	}
+
+	/**
+	 * Fetches the JWK set and waits for it, joining the fetch in progress if any
+	 */
+	void refresh() throws IOException, ParseException {
+		try {
+			fetch().get(FETCH_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof ParseException) {
+				throw (ParseException) e.getCause();
+			}
+			throw new IllegalStateException("Unable to fetch the JWK set from " + this.jwkSetUri, e.getCause());
+		} catch (TimeoutException e) {
+			throw new IOException("Timed out fetching the JWK set from " + this.jwkSetUri, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while fetching the JWK set from " + this.jwkSetUri, e);
+		}
+	}
+
+	private JWKSet load() throws IOException, ParseException {
+		if ("file".equalsIgnoreCase(this.jwkSetUri.getScheme())) {
+			return JWKSet.load(new File(this.jwkSetUri));
+		}
+		return JWKSet.parse(this.resourceRetriever.retrieveResource(this.jwkSetUri.toURL()).getContent());
+	}
+
+	/**
+	 * @return When the current keys were loaded, or null if no key set was loaded yet
+	 */
+	public Instant getLastRefresh() {
+		return this.snapshot.loadedAt;
+	}
+
+	public int getKeyCount() {
+		return this.snapshot.jwkSet.getKeys().size();
+	}
+
+	public long getFetchCount() {
+		return this.fetchCount.sum();
+	}
+
+	public long getFetchFailureCount() {
+		return this.fetchFailureCount.sum();
+	}
+
+	/**
+	 * @return How many key lookups asked for a kid missing from the current key set
+	 */
+	public long getUnknownKidCount() {
+		return this.unknownKidCount.sum();
+	}
+
+	public void setClock(Clock clock) {
+		Assert.notNull(clock, "clock cannot be null");
+		this.clock = clock;
+	}
+
+	@Override
+	public void close() {
+		this.scheduler.shutdownNow();
+	}
+
+	/**
+	 * Immutable view of a JWK set, with its keys indexed by kid
+	 */
+	private static final class KeySnapshot {
+
+		static final KeySnapshot EMPTY = new KeySnapshot(new JWKSet(), null);
+
+		final JWKSet jwkSet;
+		final Map<String, JWK> byKid;
+		final Instant loadedAt;
+
+		KeySnapshot(JWKSet jwkSet, Instant loadedAt) {
+			Map<String, JWK> index = new HashMap<>();
+			for (JWK jwk : jwkSet.getKeys()) {
+				if (jwk.getKeyID() != null) {
+					index.put(jwk.getKeyID(), jwk);
+				}
+			}
+			this.jwkSet = jwkSet;
+			this.byKid = Collections.unmodifiableMap(index);
+			this.loadedAt = loadedAt;
+		}
+
+		List<JWK> select(JWKSelector jwkSelector) {
+			JWKMatcher matcher = jwkSelector.getMatcher();
+			Set<String> kids = matcher.getKeyIDs();
+			if (kids != null && kids.size() == 1) {
+				JWK jwk = this.byKid.get(kids.iterator().next());
+				return jwk != null && matcher.matches(jwk) ? Collections.singletonList(jwk) : Collections.emptyList();
+			}
+			return jwkSelector.select(this.jwkSet);
+		}
+
+	}
+
+}
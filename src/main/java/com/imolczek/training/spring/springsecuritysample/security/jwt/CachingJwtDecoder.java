@@ -0,0 +1,118 @@
+package com.imolczek.training.spring.springsecuritysample.security.jwt;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.util.Assert;
+
+import com.imolczek.training.spring.springsecuritysample.security.TokenDigest;
+
+/**
+ * A JwtDecoder that remembers the tokens it has already verified
+ * The JWT signature check is the most expensive step of a request, and API clients
+ * usually send the same bearer token many times until it expires
+ * Tokens are keyed by their SHA-256 digest so that the raw token value is not kept
+ * as a map key, and a decoded Jwt is served from the cache until its exp claim
+ * (plus the allowed clock skew) has passed
+ * Tokens without an exp claim and tokens rejected by the delegate are never cached
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+	private final JwtDecoder delegate;
+	private final int maxSize;
+	private final Duration clockSkew;
+	private final Map<TokenDigest, Jwt> cache = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private Clock clock = Clock.systemUTC();
+
+	public CachingJwtDecoder(JwtDecoder delegate, int maxSize, Duration clockSkew) {
+		Assert.notNull(delegate, "delegate cannot be null");
+		Assert.isTrue(maxSize > 0, "maxSize must be positive");
+		Assert.isTrue(clockSkew != null && !clockSkew.isNegative(), "clockSkew must be a positive duration");
+		this.delegate = delegate;
+		this.maxSize = maxSize;
+		this.clockSkew = clockSkew;
+	}
+
+	@Override
+	public Jwt decode(String token) throws JwtException {
+		TokenDigest key = TokenDigest.of(token);
+		Instant now = this.clock.instant();
+
+		Jwt cached = this.cache.get(key);
+		if (cached != null) {
+			if (isLive(cached, now)) {
+				this.hits.increment();
+				return cached;
+			}
+			this.cache.remove(key, cached);
+		}
+
+		this.misses.increment();
+		Jwt jwt = this.delegate.decode(token);
+		if (jwt.getExpiresAt() != null && isLive(jwt, now)) {
+			if (this.cache.size() >= this.maxSize) {
+				evict(now);
+			}
+			this.cache.put(key, jwt);
+		}
+		return jwt;
+	}
+
+	/**
+	 * Drops every expired entry, then arbitrary entries until the cache is back
+	 * under 90% of its maximum size, so that eviction does not run on every miss
+	 */
+	private void evict(Instant now) {
+		int target = this.maxSize - Math.max(1, this.maxSize / 10);
+		Iterator<Jwt> values = this.cache.values().iterator();
+		while (values.hasNext()) {
+			if (!isLive(values.next(), now)) {
+				values.remove();
+				this.evictions.increment();
+			}
+		}
+		values = this.cache.values().iterator();
+		while (this.cache.size() > target && values.hasNext()) {
+			values.next();
+			values.remove();
+			this.evictions.increment();
+		}
+	}
+
+	private boolean isLive(Jwt jwt, Instant now) {
+		return now.isBefore(jwt.getExpiresAt().plus(this.clockSkew));
+	}
+
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return this.evictions.sum();
+	}
+
+	public int size() {
+		return this.cache.size();
+	}
+
+	public void setClock(Clock clock) {
+		Assert.notNull(clock, "clock cannot be null");
+		this.clock = clock;
+	}
+
+}
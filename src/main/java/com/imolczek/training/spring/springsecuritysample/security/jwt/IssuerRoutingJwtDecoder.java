@@ -0,0 +1,147 @@
+package com.imolczek.training.spring.springsecuritysample.security.jwt;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * A JwtDecoder serving several issuers, e.g. several Keycloak realms
+ * The iss claim is peeked at without verifying the token: only the payload is decoded
+ * and streamed until the claim is found
+ * Tokens from an issuer outside of the allowlist are rejected right away; the others
+ * are handed to the decoder of their issuer, created on first use and then reused
+ * A decoder is created outside of the map of decoders: tokens of the same issuer wait
+ * for its creation, those of other issuers do not
+ * Since the issuer is read before the signature is checked, the issuer decoders must
+ * validate the iss claim themselves
+ */
+public class IssuerRoutingJwtDecoder implements JwtDecoder {
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private final Set<String> trustedIssuers;
+	private final Function<String, JwtDecoder> decoderFactory;
+	private final Map<String, CompletableFuture<JwtDecoder>> decoders = new ConcurrentHashMap<>();
+
+	/**
+	 * @param trustedIssuers The allowlist of iss claim values
+	 * @param decoderFactory Creates the decoder of an issuer of the allowlist
+	 */
+	public IssuerRoutingJwtDecoder(Set<String> trustedIssuers, Function<String, JwtDecoder> decoderFactory) {
+		Assert.notEmpty(trustedIssuers, "trustedIssuers cannot be empty");
+		Assert.notNull(decoderFactory, "decoderFactory cannot be null");
+		this.trustedIssuers = new HashSet<>(trustedIssuers);
+		this.decoderFactory = decoderFactory;
+	}
+
+	@Override
+	public Jwt decode(String token) throws JwtException {
+		String issuer = readIssuer(token);
+		if (issuer == null || !this.trustedIssuers.contains(issuer)) {
+			throw new JwtException("Untrusted issuer");
+		}
+		JwtDecoder decoder;
+		try {
+			decoder = decoder(issuer).join();
+		} catch (CompletionException e) {
+			throw new JwtException("Unable to create the decoder of " + issuer, e.getCause());
+		}
+		return decoder.decode(token);
+	}
+
+	/**
+	 * @param issuer A trusted issuer
+	 * @return The decoder of the issuer, created by the first caller; a failed creation
+	 * is forgotten so that the next token retries it
+	 */
+	private CompletableFuture<JwtDecoder> decoder(String issuer) {
+		CompletableFuture<JwtDecoder> decoder = this.decoders.get(issuer);
+		if (decoder != null) {
+			return decoder;
+		}
+		CompletableFuture<JwtDecoder> creation = new CompletableFuture<>();
+		decoder = this.decoders.putIfAbsent(issuer, creation);
+		if (decoder != null) {
+			return decoder;
+		}
+		try {
+			creation.complete(this.decoderFactory.apply(issuer));
+		} catch (RuntimeException e) {
+			this.decoders.remove(issuer, creation);
+			creation.completeExceptionally(e);
+		}
+		return creation;
+	}
+
+	/**
+	 * Creates the decoder of every trusted issuer ahead of its first token
+	 * @param executor Runs the creations, one task per issuer
+	 * @return A future completed once every decoder is created
+	 */
+	public CompletableFuture<Void> prefetch(Executor executor) {
+		return CompletableFuture.allOf(this.trustedIssuers.stream()
+				.map(issuer -> CompletableFuture.runAsync(() -> decoder(issuer).join(), executor))
+				.toArray(CompletableFuture[]::new));
+	}
+
+	/**
+	 * Reads the iss claim of a signed JWT without verifying it
+	 * @param token A serialized JWS
+	 * @return The iss claim, or null if the token has none
+	 * @throws JwtException If the token is not a well-formed JWS
+	 */
+	static String readIssuer(String token) {
+		int firstDot = token.indexOf('.');
+		int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+		if (secondDot < 0 || token.indexOf('.', secondDot + 1) >= 0) {
+			throw new JwtException("Malformed token");
+		}
+		byte[] payload;
+		try {
+			payload = Base64.getUrlDecoder().decode(token.substring(firstDot + 1, secondDot));
+		} catch (IllegalArgumentException e) {
+			throw new JwtException("Malformed token payload", e);
+		}
+
+		try (JsonParser parser = JSON.createParser(payload)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new JwtException("Malformed token payload");
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String name = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if ("iss".equals(name)) {
+					return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+				}
+				parser.skipChildren();
+			}
+			return null;
+		} catch (IOException e) {
+			throw new JwtException("Malformed token payload", e);
+		}
+	}
+
+	/**
+	 * @return How many issuer decoders were created so far, or are being created
+	 */
+	public int getDecoderCount() {
+		return this.decoders.size();
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.imolczek.training.spring.springsecuritysample.security.method;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Assigns a bit to every authority name referenced by an authorization rule
+ * The authorities of an Authentication can then be turned into a BitSet once,
+ * and every authority check of a rule becomes a bit test
+ * Authorities that no rule references are simply ignored
+ */
+public class AuthorityIndex {
+
+	private final Map<String, Integer> bits = new ConcurrentHashMap<>();
+
+	/**
+	 * @param authority An authority name referenced by a rule
+	 * @return The bit assigned to this authority
+	 */
+	synchronized int register(String authority) {
+		return this.bits.computeIfAbsent(authority, name -> this.bits.size());
+	}
+
+	/**
+	 * @param authorities The granted authorities
+	 * @return The bits of the granted authorities known to this index
+	 */
+	public BitSet toBitSet(Collection<? extends GrantedAuthority> authorities) {
+		BitSet granted = new BitSet(this.bits.size());
+		for (GrantedAuthority authority : authorities) {
+			String name = authority.getAuthority();
+			Integer bit = name == null ? null : this.bits.get(name);
+			if (bit != null) {
+				granted.set(bit);
+			}
+		}
+		return granted;
+	}
+
+	public int size() {
+		return this.bits.size();
+	}
+
+}
@@ -0,0 +1,17 @@
+package com.imolczek.training.spring.springsecuritysample.security.method;
+
+import java.util.BitSet;
+
+import org.springframework.security.core.Authentication;
+
+/**
+ * An authorization expression compiled into a predicate
+ * The granted authorities are passed as a BitSet built by the AuthorityIndex
+ * the rule was compiled against
+ */
+@FunctionalInterface
+public interface AuthorizationRule {
+
+	boolean matches(Authentication authentication, BitSet granted);
+
+}
@@ -0,0 +1,276 @@
+package com.imolczek.training.spring.springsecuritysample.security.method;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+
+/**
+ * Compiles the subset of the Spring Security expression language used in @PreAuthorize
+ * annotations into AuthorizationRule predicates
+ * Supported expressions:
+ * - hasAuthority('a'), hasAnyAuthority('a', 'b'), hasRole('r'), hasAnyRole('r', 's')
+ * - isAuthenticated(), isFullyAuthenticated(), isAnonymous(), permitAll, denyAll, true, false
+ * - and / &&, or / ||, not / !, and parentheses
+ * Any other expression is rejected with an IllegalArgumentException, so that an
+ * unsupported rule is reported at startup rather than silently misinterpreted
+ */
+public class AuthorizationRuleCompiler {
+
+	private static final String ROLE_PREFIX = "ROLE_";
+
+	private final AuthorityIndex authorityIndex;
+	private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+	public AuthorizationRuleCompiler(AuthorityIndex authorityIndex) {
+		this.authorityIndex = authorityIndex;
+	}
+
+	public AuthorizationRule compile(String expression) {
+		return new Parser(expression).parse();
+	}
+
+	private AuthorizationRule hasAll(BitSet required) {
+		return (authentication, granted) -> {
+			for (int bit = required.nextSetBit(0); bit >= 0; bit = required.nextSetBit(bit + 1)) {
+				if (!granted.get(bit)) {
+					return false;
+				}
+			}
+			return true;
+		};
+	}
+
+	private AuthorizationRule hasAny(BitSet accepted) {
+		return (authentication, granted) -> accepted.intersects(granted);
+	}
+
+	private final class Parser {
+
+		private final String expression;
+		private int position;
+
+		Parser(String expression) {
+			this.expression = expression;
+		}
+
+		AuthorizationRule parse() {
+			AuthorizationRule rule = or();
+			skipWhitespace();
+			if (this.position != this.expression.length()) {
+				throw error("unexpected input");
+			}
+			return rule;
+		}
+
+		private AuthorizationRule or() {
+			AuthorizationRule left = and();
+			while (consumeOperator("or", "||")) {
+				AuthorizationRule l = left;
+				AuthorizationRule r = and();
+				left = (authentication, granted) -> l.matches(authentication, granted) || r.matches(authentication, granted);
+			}
+			return left;
+		}
+
+		/**
+		 * Consecutive authority checks joined with "and" are folded into a single
+		 * "has all of these bits" test
+		 */
+		private AuthorizationRule and() {
+			BitSet required = new BitSet();
+			List<AuthorizationRule> others = new ArrayList<>();
+			do {
+				int start = this.position;
+				AuthorizationRule operand = unary();
+				String single = singleAuthority(start);
+				if (single != null) {
+					required.set(AuthorizationRuleCompiler.this.authorityIndex.register(single));
+				} else {
+					others.add(operand);
+				}
+			} while (consumeOperator("and", "&&"));
+
+			if (!required.isEmpty()) {
+				others.add(0, hasAll(required));
+			}
+			if (others.size() == 1) {
+				return others.get(0);
+			}
+			AuthorizationRule[] rules = others.toArray(new AuthorizationRule[0]);
+			return (authentication, granted) -> {
+				for (AuthorizationRule rule : rules) {
+					if (!rule.matches(authentication, granted)) {
+						return false;
+					}
+				}
+				return true;
+			};
+		}
+
+		private AuthorizationRule unary() {
+			if (consumeOperator("not", "!")) {
+				AuthorizationRule negated = unary();
+				return (authentication, granted) -> !negated.matches(authentication, granted);
+			}
+			return primary();
+		}
+
+		private AuthorizationRule primary() {
+			skipWhitespace();
+			if (consume('(')) {
+				AuthorizationRule rule = or();
+				expect(')');
+				return rule;
+			}
+			String name = identifier();
+			switch (name) {
+			case "permitAll":
+			case "true":
+				return (authentication, granted) -> true;
+			case "denyAll":
+			case "false":
+				return (authentication, granted) -> false;
+			case "isAuthenticated":
+				noArguments();
+				return (authentication, granted) -> !AuthorizationRuleCompiler.this.trustResolver.isAnonymous(authentication);
+			case "isFullyAuthenticated":
+				noArguments();
+				return (authentication, granted) -> !AuthorizationRuleCompiler.this.trustResolver.isAnonymous(authentication)
+						&& !AuthorizationRuleCompiler.this.trustResolver.isRememberMe(authentication);
+			case "isAnonymous":
+				noArguments();
+				return (authentication, granted) -> AuthorizationRuleCompiler.this.trustResolver.isAnonymous(authentication);
+			case "hasAuthority":
+			case "hasRole":
+			case "hasAnyAuthority":
+			case "hasAnyRole":
+				return authorityCheck(name, arguments());
+			default:
+				throw error("unsupported function or variable '" + name + "'");
+			}
+		}
+
+		private AuthorizationRule authorityCheck(String function, List<String> authorities) {
+			boolean any = function.startsWith("hasAny");
+			boolean role = function.endsWith("Role");
+			if (authorities.isEmpty() || (!any && authorities.size() != 1)) {
+				throw error(function + " expects " + (any ? "at least one argument" : "exactly one argument"));
+			}
+			BitSet bits = new BitSet();
+			for (String authority : authorities) {
+				String name = role && !authority.startsWith(ROLE_PREFIX) ? ROLE_PREFIX + authority : authority;
+				bits.set(AuthorizationRuleCompiler.this.authorityIndex.register(name));
+			}
+			return any ? hasAny(bits) : hasAll(bits);
+		}
+
+		/**
+		 * @return The authority checked by the operand parsed from start, if it is a plain
+		 *         hasAuthority or hasRole call
+		 */
+		private String singleAuthority(int start) {
+			String operand = this.expression.substring(start, this.position).trim();
+			boolean role = operand.startsWith("hasRole(");
+			if (!role && !operand.startsWith("hasAuthority(")) {
+				return null;
+			}
+			String authority = new Parser(operand.substring(operand.indexOf('(') + 1, operand.length() - 1)).stringLiteral();
+			return role && !authority.startsWith(ROLE_PREFIX) ? ROLE_PREFIX + authority : authority;
+		}
+
+		private List<String> arguments() {
+			expect('(');
+			List<String> arguments = new ArrayList<>();
+			skipWhitespace();
+			if (!consume(')')) {
+				do {
+					arguments.add(stringLiteral());
+					skipWhitespace();
+				} while (consume(','));
+				expect(')');
+			}
+			return arguments;
+		}
+
+		private void noArguments() {
+			expect('(');
+			expect(')');
+		}
+
+		private String stringLiteral() {
+			skipWhitespace();
+			if (this.position >= this.expression.length()) {
+				throw error("string literal expected");
+			}
+			char quote = this.expression.charAt(this.position);
+			if (quote != '\'' && quote != '"') {
+				throw error("string literal expected");
+			}
+			int end = this.expression.indexOf(quote, this.position + 1);
+			if (end < 0) {
+				throw error("unterminated string literal");
+			}
+			String literal = this.expression.substring(this.position + 1, end);
+			this.position = end + 1;
+			return literal;
+		}
+
+		private String identifier() {
+			int start = this.position;
+			while (this.position < this.expression.length()
+					&& Character.isJavaIdentifierPart(this.expression.charAt(this.position))) {
+				this.position++;
+			}
+			if (start == this.position) {
+				throw error("identifier expected");
+			}
+			return this.expression.substring(start, this.position);
+		}
+
+		private boolean consumeOperator(String word, String symbol) {
+			skipWhitespace();
+			if (this.expression.startsWith(symbol, this.position)) {
+				this.position += symbol.length();
+				return true;
+			}
+			int end = this.position + word.length();
+			if (this.expression.regionMatches(true, this.position, word, 0, word.length())
+					&& (end == this.expression.length() || !Character.isJavaIdentifierPart(this.expression.charAt(end)))) {
+				this.position = end;
+				return true;
+			}
+			return false;
+		}
+
+		private boolean consume(char expected) {
+			skipWhitespace();
+			if (this.position < this.expression.length() && this.expression.charAt(this.position) == expected) {
+				this.position++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char expected) {
+			if (!consume(expected)) {
+				throw error("'" + expected + "' expected");
+			}
+		}
+
+		private void skipWhitespace() {
+			while (this.position < this.expression.length() && Character.isWhitespace(this.expression.charAt(this.position))) {
+				this.position++;
+			}
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException("Cannot compile authorization rule \"" + this.expression + "\" at position "
+					+ this.position + ": " + message);
+		}
+
+	}
+
+}
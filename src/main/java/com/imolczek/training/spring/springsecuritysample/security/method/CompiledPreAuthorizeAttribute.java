@@ -0,0 +1,41 @@
+package com.imolczek.training.spring.springsecuritysample.security.method;
+
+import org.springframework.security.access.ConfigAttribute;
+
+/**
+ * The compiled form of a @PreAuthorize expression
+ */
+public class CompiledPreAuthorizeAttribute implements ConfigAttribute {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String expression;
+	private final transient AuthorizationRule rule;
+
+	public CompiledPreAuthorizeAttribute(String expression, AuthorizationRule rule) {
+		this.expression = expression;
+		this.rule = rule;
+	}
+
+	public AuthorizationRule getRule() {
+		return this.rule;
+	}
+
+	public String getExpression() {
+		return this.expression;
+	}
+
+	/**
+	 * @return null, as this attribute cannot be represented as a String
+	 */
+	@Override
+	public String getAttribute() {
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "compiled[" + this.expression + "]";
+	}
+
+}
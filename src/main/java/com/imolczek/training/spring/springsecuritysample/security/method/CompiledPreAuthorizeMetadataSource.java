@@ -0,0 +1,67 @@
+package com.imolczek.training.spring.springsecuritysample.security.method;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.access.method.AbstractMethodSecurityMetadataSource;
+import org.springframework.security.access.prepost.PostAuthorize;
+import org.springframework.security.access.prepost.PostFilter;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.access.prepost.PreFilter;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Reads @PreAuthorize annotations and compiles their expression once, when the
+ * secured bean is proxied at startup
+ * An expression that cannot be compiled fails the startup
+ * Methods that also use @PreFilter, @PostFilter or @PostAuthorize are left to the
+ * standard SpEL based metadata source
+ */
+public class CompiledPreAuthorizeMetadataSource extends AbstractMethodSecurityMetadataSource {
+
+	private final AuthorizationRuleCompiler compiler;
+	private final Map<String, CompiledPreAuthorizeAttribute> compiled = new ConcurrentHashMap<>();
+
+	public CompiledPreAuthorizeMetadataSource(AuthorizationRuleCompiler compiler) {
+		this.compiler = compiler;
+	}
+
+	@Override
+	public Collection<ConfigAttribute> getAttributes(Method method, Class<?> targetClass) {
+		if (method.getDeclaringClass() == Object.class) {
+			return Collections.emptyList();
+		}
+		Method specificMethod = ClassUtils.getMostSpecificMethod(method, targetClass);
+		if (AnnotationUtils.findAnnotation(specificMethod, PreFilter.class) != null
+				|| AnnotationUtils.findAnnotation(specificMethod, PostFilter.class) != null
+				|| AnnotationUtils.findAnnotation(specificMethod, PostAuthorize.class) != null) {
+			return Collections.emptyList();
+		}
+
+		PreAuthorize preAuthorize = AnnotationUtils.findAnnotation(specificMethod, PreAuthorize.class);
+		if (preAuthorize == null) {
+			preAuthorize = AnnotationUtils.findAnnotation(specificMethod.getDeclaringClass(), PreAuthorize.class);
+		}
+		if (preAuthorize == null) {
+			return Collections.emptyList();
+		}
+
+		try {
+			return Collections.singletonList(this.compiled.computeIfAbsent(preAuthorize.value(),
+					expression -> new CompiledPreAuthorizeAttribute(expression, this.compiler.compile(expression))));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalStateException("Invalid @PreAuthorize on " + specificMethod, e);
+		}
+	}
+
+	@Override
+	public Collection<ConfigAttribute> getAllConfigAttributes() {
+		return null;
+	}
+
+}
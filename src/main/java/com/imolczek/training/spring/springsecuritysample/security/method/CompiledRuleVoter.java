@@ -0,0 +1,45 @@
+package com.imolczek.training.spring.springsecuritysample.security.method;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.security.access.AccessDecisionVoter;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Votes on compiled @PreAuthorize rules
+ * Abstains when the secured method has no compiled rule
+ */
+public class CompiledRuleVoter implements AccessDecisionVoter<MethodInvocation> {
+
+	private final AuthorityIndex authorityIndex;
+
+	public CompiledRuleVoter(AuthorityIndex authorityIndex) {
+		this.authorityIndex = authorityIndex;
+	}
+
+	@Override
+	public boolean supports(ConfigAttribute attribute) {
+		return attribute instanceof CompiledPreAuthorizeAttribute;
+	}
+
+	@Override
+	public boolean supports(Class<?> clazz) {
+		return MethodInvocation.class.isAssignableFrom(clazz);
+	}
+
+	@Override
+	public int vote(Authentication authentication, MethodInvocation invocation, Collection<ConfigAttribute> attributes) {
+		for (ConfigAttribute attribute : attributes) {
+			if (attribute instanceof CompiledPreAuthorizeAttribute) {
+				BitSet granted = this.authorityIndex.toBitSet(authentication.getAuthorities());
+				return ((CompiledPreAuthorizeAttribute) attribute).getRule().matches(authentication, granted)
+						? ACCESS_GRANTED : ACCESS_DENIED;
+			}
+		}
+		return ACCESS_ABSTAIN;
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.imolczek.training.spring.springsecuritysample.security.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.security.access.AccessDecisionManager;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.core.Authentication;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times the method security decisions, per secured method and decision, and counts
+ * denials per reason: anonymous (no bearer token) or insufficient_authority
+ * The meters of a method are registered on its first decision
+ * The registry is looked up lazily because method security is set up before the
+ * metrics infrastructure
+ */
+public class InstrumentedAccessDecisionManager implements AccessDecisionManager {
+
+	public static final String METRIC_NAME = "sample.security.authorization";
+	public static final String DENIED_METRIC_NAME = "sample.security.authorization.denied";
+
+	private final AccessDecisionManager delegate;
+	private final Supplier<MeterRegistry> registry;
+	private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+	private final Map<Object, DecisionMeters> meters = new ConcurrentHashMap<>();
+
+	public InstrumentedAccessDecisionManager(AccessDecisionManager delegate, Supplier<MeterRegistry> registry) {
+		this.delegate = delegate;
+		this.registry = registry;
+	}
+
+	@Override
+	public void decide(Authentication authentication, Object object, Collection<ConfigAttribute> configAttributes)
+			throws AccessDeniedException, InsufficientAuthenticationException {
+		DecisionMeters decisionMeters = this.meters.computeIfAbsent(key(object), this::register);
+		long start = System.nanoTime();
+		try {
+			this.delegate.decide(authentication, object, configAttributes);
+			decisionMeters.granted.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		} catch (AccessDeniedException | InsufficientAuthenticationException e) {
+			decisionMeters.denied.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			if (this.trustResolver.isAnonymous(authentication)) {
+				decisionMeters.deniedAnonymous.increment();
+			} else {
+				decisionMeters.deniedInsufficientAuthority.increment();
+			}
+			throw e;
+		}
+	}
+
+	private static Object key(Object object) {
+		return object instanceof MethodInvocation ? ((MethodInvocation) object).getMethod() : object.getClass();
+	}
+
+	private DecisionMeters register(Object key) {
+		String name = key instanceof Method
+				? ((Method) key).getDeclaringClass().getSimpleName() + "." + ((Method) key).getName()
+				: ((Class<?>) key).getSimpleName();
+		return new DecisionMeters(this.registry.get(), name);
+	}
+
+	@Override
+	public boolean supports(ConfigAttribute attribute) {
+		return this.delegate.supports(attribute);
+	}
+
+	@Override
+	public boolean supports(Class<?> clazz) {
+		return this.delegate.supports(clazz);
+	}
+
+	private static final class DecisionMeters {
+
+		final Timer granted;
+		final Timer denied;
+		final Counter deniedAnonymous;
+		final Counter deniedInsufficientAuthority;
+
+		DecisionMeters(MeterRegistry registry, String method) {
+			this.granted = Timer.builder(METRIC_NAME).tag("method", method).tag("decision", "granted").register(registry);
+			this.denied = Timer.builder(METRIC_NAME).tag("method", method).tag("decision", "denied").register(registry);
+			this.deniedAnonymous = Counter.builder(DENIED_METRIC_NAME).tag("method", method)
+					.tag("reason", "anonymous").register(registry);
+			this.deniedInsufficientAuthority = Counter.builder(DENIED_METRIC_NAME).tag("method", method)
+					.tag("reason", "insufficient_authority").register(registry);
+		}
+
+	}
+
+}
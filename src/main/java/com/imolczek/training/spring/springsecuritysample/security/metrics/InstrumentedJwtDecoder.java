@@ -0,0 +1,105 @@
+package com.imolczek.training.spring.springsecuritysample.security.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+
+import com.imolczek.training.spring.springsecuritysample.security.revocation.RevokedTokenException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times every token decoding, tagged with its outcome:
+ * success, expired, invalid_claims, bad_signature, unknown_kid, untrusted_issuer, revoked, malformed or invalid
+ * One timer per outcome is registered up front, so that recording allocates nothing
+ */
+public class InstrumentedJwtDecoder implements JwtDecoder {
+
+	public static final String METRIC_NAME = "sample.security.jwt.decode";
+
+	private final JwtDecoder delegate;
+	private final Timer success;
+	private final Timer expired;
+	private final Timer invalidClaims;
+	private final Timer badSignature;
+	private final Timer unknownKid;
+	private final Timer untrustedIssuer;
+	private final Timer revoked;
+	private final Timer malformed;
+	private final Timer invalid;
+
+	public InstrumentedJwtDecoder(JwtDecoder delegate, MeterRegistry registry) {
+		this.delegate = delegate;
+		this.success = timer(registry, "success");
+		this.expired = timer(registry, "expired");
+		this.invalidClaims = timer(registry, "invalid_claims");
+		this.badSignature = timer(registry, "bad_signature");
+		this.unknownKid = timer(registry, "unknown_kid");
+		this.untrustedIssuer = timer(registry, "untrusted_issuer");
+		this.revoked = timer(registry, "revoked");
+		this.malformed = timer(registry, "malformed");
+		this.invalid = timer(registry, "invalid");
+	}
+
+	private static Timer timer(MeterRegistry registry, String outcome) {
+		return Timer.builder(METRIC_NAME)
+				.description("Decoding and validation of bearer tokens")
+				.tag("outcome", outcome)
+				.register(registry);
+	}
+
+	@Override
+	public Jwt decode(String token) throws JwtException {
+		long start = System.nanoTime();
+		try {
+			Jwt jwt = this.delegate.decode(token);
+			this.success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			return jwt;
+		} catch (JwtException e) {
+			failureTimer(e).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			throw e;
+		}
+	}
+
+	/**
+	 * Spring Security and Nimbus only report the cause of a failure in the exception
+	 * message, so the outcome is derived from it
+	 */
+	private Timer failureTimer(JwtException exception) {
+		if (exception instanceof RevokedTokenException) {
+			return this.revoked;
+		}
+		if (exception instanceof JwtValidationException) {
+			for (OAuth2Error error : ((JwtValidationException) exception).getErrors()) {
+				String description = error.getDescription();
+				if (description != null && description.contains("expired")) {
+					return this.expired;
+				}
+			}
+			return this.invalidClaims;
+		}
+		String message = exception.getMessage();
+		if (message == null) {
+			return this.invalid;
+		}
+		if (message.contains("Invalid signature")) {
+			return this.badSignature;
+		}
+		if (message.contains("no matching key")) {
+			return this.unknownKid;
+		}
+		if (message.contains("Untrusted issuer")) {
+			return this.untrustedIssuer;
+		}
+		if (message.contains("Malformed") || message.contains("Invalid JWT serialization") || message.contains("parse")) {
+			return this.malformed;
+		}
+		return this.invalid;
+	}
+
+}
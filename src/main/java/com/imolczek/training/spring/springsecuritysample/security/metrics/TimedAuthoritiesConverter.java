@@ -0,0 +1,40 @@
+package com.imolczek.training.spring.springsecuritysample.security.metrics;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times the mapping of token claims to authorities
+ */
+public class TimedAuthoritiesConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
+
+	public static final String METRIC_NAME = "sample.security.authorities.conversion";
+
+	private final Converter<Jwt, Collection<GrantedAuthority>> delegate;
+	private final Timer timer;
+
+	public TimedAuthoritiesConverter(Converter<Jwt, Collection<GrantedAuthority>> delegate, MeterRegistry registry) {
+		this.delegate = delegate;
+		this.timer = Timer.builder(METRIC_NAME)
+				.description("Mapping of token claims to authorities")
+				.register(registry);
+	}
+
+	@Override
+	public Collection<GrantedAuthority> convert(Jwt jwt) {
+		long start = System.nanoTime();
+		try {
+			return this.delegate.convert(jwt);
+		} finally {
+			this.timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+}
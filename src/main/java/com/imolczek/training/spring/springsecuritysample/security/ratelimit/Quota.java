@@ -0,0 +1,42 @@
+package com.imolczek.training.spring.springsecuritysample.security.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.util.Assert;
+
+/**
+ * A request rate sustained over time, plus the burst of requests allowed on top of it
+ */
+public final class Quota {
+
+	private final String name;
+	private final long emissionIntervalNanos;
+	private final long toleranceNanos;
+
+	/**
+	 * @param name Name of the quota, buckets are kept separately per quota
+	 * @param requestsPerSecond Sustained rate
+	 * @param burst Number of requests that may be sent at once by an idle client
+	 */
+	public Quota(String name, double requestsPerSecond, int burst) {
+		Assert.hasText(name, "name cannot be empty");
+		Assert.isTrue(requestsPerSecond > 0, "requestsPerSecond must be positive");
+		Assert.isTrue(burst > 0, "burst must be positive");
+		this.name = name;
+		this.emissionIntervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+		this.toleranceNanos = this.emissionIntervalNanos * burst;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	long getEmissionIntervalNanos() {
+		return emissionIntervalNanos;
+	}
+
+	long getToleranceNanos() {
+		return toleranceNanos;
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.imolczek.training.spring.springsecuritysample.security.ratelimit;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Rejects the requests of a client going over its quota with a 429 status and a
+ * Retry-After header, before they reach the controller
+ * Clients are identified by the sub and azp claims of their access token, so that
+ * a user is limited separately in each application it uses
+ * The quota is chosen by the first matching request matcher, so that e.g. listing
+ * and details calls are limited separately; unmatched requests use the default quota
+ * Unauthenticated requests are left to the authorization rules
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+	public static final String REJECTED_METRIC_NAME = "sample.security.ratelimit.rejected";
+
+	private final RateLimiter rateLimiter;
+	private final Map<RequestMatcher, Quota> quotas;
+	private final Quota defaultQuota;
+	private final Map<Quota, Counter> rejected = new LinkedHashMap<>();
+
+	/**
+	 * @param rateLimiter Holds the buckets
+	 * @param quotas Quotas by request matcher, in the order they should be tried
+	 * @param defaultQuota Quota of the requests that no matcher matches
+	 * @param registry Where to count the rejected requests
+	 */
+	public RateLimitFilter(RateLimiter rateLimiter, Map<RequestMatcher, Quota> quotas, Quota defaultQuota,
+			MeterRegistry registry) {
+		this.rateLimiter = rateLimiter;
+		this.quotas = new LinkedHashMap<>(quotas);
+		this.defaultQuota = defaultQuota;
+		for (Quota quota : this.quotas.values()) {
+			this.rejected.computeIfAbsent(quota, q -> counter(registry, q));
+		}
+		this.rejected.computeIfAbsent(defaultQuota, q -> counter(registry, q));
+	}
+
+	private static Counter counter(MeterRegistry registry, Quota quota) {
+		return Counter.builder(REJECTED_METRIC_NAME)
+				.description("Requests rejected for going over the client quota")
+				.tag("quota", quota.getName())
+				.register(registry);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication == null || !(authentication.getPrincipal() instanceof Jwt)) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		Jwt jwt = (Jwt) authentication.getPrincipal();
+		Quota quota = quotaFor(request);
+		long waitNanos = this.rateLimiter.tryAcquire(quota, clientKey(jwt));
+		if (waitNanos > 0) {
+			this.rejected.get(quota).increment();
+			long retryAfter = Math.max(1L, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+			response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+			response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase());
+			return;
+		}
+		filterChain.doFilter(request, response);
+	}
+
+	private Quota quotaFor(HttpServletRequest request) {
+		for (Map.Entry<RequestMatcher, Quota> entry : this.quotas.entrySet()) {
+			if (entry.getKey().matches(request)) {
+				return entry.getValue();
+			}
+		}
+		return this.defaultQuota;
+	}
+
+	private static String clientKey(Jwt jwt) {
+		String clientId = jwt.getClaimAsString("azp");
+		return clientId == null ? jwt.getSubject() : jwt.getSubject() + '\u0000' + clientId;
+	}
+
+}
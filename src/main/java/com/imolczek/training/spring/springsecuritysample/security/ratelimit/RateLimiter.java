@@ -0,0 +1,93 @@
+package com.imolczek.training.spring.springsecuritysample.security.ratelimit;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.springframework.util.Assert;
+
+/**
+ * Rate limiting of clients with the generic cell rate algorithm (GCRA)
+ * A bucket boils down to a single theoretical arrival time, updated with a CAS:
+ * there is no lock and no refill thread, and contention is limited to requests
+ * sharing the same key, the map itself being lock-free on reads
+ * A bucket whose theoretical arrival time is in the past is equivalent to a full bucket,
+ * so idle buckets are dropped when the map is full without loosening any limit
+ * When all buckets are busy, arbitrary ones are dropped, which only errs on the
+ * permissive side for the clients concerned
+ */
+public class RateLimiter {
+
+	private final int maxKeys;
+	private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+	private final AtomicBoolean evicting = new AtomicBoolean();
+	private LongSupplier nanoClock = System::nanoTime;
+
+	public RateLimiter(int maxKeys) {
+		Assert.isTrue(maxKeys > 0, "maxKeys must be positive");
+		this.maxKeys = maxKeys;
+	}
+
+	/**
+	 * Consumes one request from the bucket of a client
+	 * @param quota The quota that applies to the request
+	 * @param key Identifies the client, e.g. its subject and client id
+	 * @return 0 if the request is allowed, otherwise how many nanoseconds to wait before retrying
+	 */
+	public long tryAcquire(Quota quota, String key) {
+		long now = this.nanoClock.getAsLong();
+		String bucketKey = quota.getName() + '\u0000' + key;
+		AtomicLong bucket = this.buckets.get(bucketKey);
+		if (bucket == null) {
+			if (this.buckets.size() >= this.maxKeys) {
+				evict(now);
+			}
+			bucket = this.buckets.computeIfAbsent(bucketKey, k -> new AtomicLong(now));
+		}
+
+		long interval = quota.getEmissionIntervalNanos();
+		long tolerance = quota.getToleranceNanos();
+		while (true) {
+			long tat = bucket.get();
+			long newTat = Math.max(tat, now) + interval;
+			long excess = newTat - now - tolerance;
+			if (excess > 0) {
+				return excess;
+			}
+			if (bucket.compareAndSet(tat, newTat)) {
+				return 0;
+			}
+		}
+	}
+
+	private void evict(long now) {
+		// A single thread sweeps, the others go on with a slightly oversized map
+		if (!this.evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			this.buckets.values().removeIf(tat -> tat.get() - now <= 0);
+			int target = this.maxKeys - this.maxKeys / 10;
+			Iterator<AtomicLong> it = this.buckets.values().iterator();
+			while (this.buckets.size() > target && it.hasNext()) {
+				it.next();
+				it.remove();
+			}
+		} finally {
+			this.evicting.set(false);
+		}
+	}
+
+	public int size() {
+		return this.buckets.size();
+	}
+
+	void setNanoClock(LongSupplier nanoClock) {
+		Assert.notNull(nanoClock, "nanoClock cannot be null");
+		this.nanoClock = nanoClock;
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.imolczek.training.spring.springsecuritysample.security.revocation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size Bloom filter over strings, in front of the exact revocation sets
+ * Nearly every token checked is not revoked: the filter answers "definitely not"
+ * for them in a few memory reads, without hashing the string into a map
+ * Bits are set atomically so that readers never need a lock; bits are never cleared,
+ * a filter is rebuilt instead, see RevocationList.prune
+ */
+final class BloomFilter {
+
+	private final AtomicLongArray words;
+	private final long bitMask;
+	private final int hashCount;
+	private final int capacity;
+
+	/**
+	 * @param capacity The number of entries the false positive rate is computed for
+	 * @param falsePositiveRate The expected false positive rate once full
+	 */
+	BloomFilter(int capacity, double falsePositiveRate) {
+		double bits = -capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		// Rounded up to a power of two so that indexes are masked rather than divided
+		long bitCount = Long.highestOneBit(Math.max(64L, (long) Math.ceil(bits)) - 1) << 1;
+		this.words = new AtomicLongArray((int) (bitCount >>> 6));
+		this.bitMask = bitCount - 1;
+		this.hashCount = Math.max(1, (int) Math.round(bitCount / (double) capacity * Math.log(2)));
+		this.capacity = capacity;
+	}
+
+	void put(long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < this.hashCount; i++) {
+			long bit = (h1 + i * h2) & this.bitMask;
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long current;
+			do {
+				current = this.words.get(word);
+			} while ((current & mask) == 0 && !this.words.compareAndSet(word, current, current | mask));
+		}
+	}
+
+	boolean mightContain(long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < this.hashCount; i++) {
+			long bit = (h1 + i * h2) & this.bitMask;
+			if ((this.words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * 64 bit hash of a string, FNV-1a over its chars followed by the MurmurHash3 finalizer
+	 * The seed keeps the hashes of token ids and subjects apart within a single filter
+	 */
+	static long hash(char seed, String value) {
+		long hash = 0xcbf29ce484222325L ^ seed;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
@@ -0,0 +1,34 @@
+package com.imolczek.training.spring.springsecuritysample.security.revocation;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.util.Assert;
+
+/**
+ * A JwtDecoder rejecting the tokens of a RevocationList
+ * It must wrap the verified token cache rather than sit behind it, so that a token
+ * revoked after its first use is not served from the cache until it expires
+ */
+public class RevocationCheckingJwtDecoder implements JwtDecoder {
+
+	private final JwtDecoder delegate;
+	private final RevocationList revocationList;
+
+	public RevocationCheckingJwtDecoder(JwtDecoder delegate, RevocationList revocationList) {
+		Assert.notNull(delegate, "delegate cannot be null");
+		Assert.notNull(revocationList, "revocationList cannot be null");
+		this.delegate = delegate;
+		this.revocationList = revocationList;
+	}
+
+	@Override
+	public Jwt decode(String token) throws JwtException {
+		Jwt jwt = this.delegate.decode(token);
+		if (this.revocationList.isRevoked(jwt)) {
+			throw new RevokedTokenException();
+		}
+		return jwt;
+	}
+
+}
@@ -0,0 +1,196 @@
+package com.imolczek.training.spring.springsecuritysample.security.revocation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Feeds a RevocationList from an append-only local file of delta updates, one per line:
+ * <pre>
+ * revoke-token &lt;jti&gt; &lt;exp&gt;
+ * revoke-subject &lt;sub&gt; &lt;revoked-at&gt; &lt;until&gt;
+ * reinstate-token &lt;jti&gt;
+ * reinstate-subject &lt;sub&gt;
+ * </pre>
+ * Instants are epoch seconds, like JWT claims; blank lines and lines starting with # are ignored
+ * The file is polled in the background and only the lines appended since the previous
+ * poll are read; a truncated or replaced file is read again from the start
+ * Expired entries are pruned from the list on a separate, slower schedule
+ */
+public class RevocationFeed implements AutoCloseable {
+
+	private static Logger logger = LoggerFactory.getLogger(RevocationFeed.class);
+
+	private final Path file;
+	private final RevocationList revocationList;
+	private final Duration pollInterval;
+	private final Duration pruneInterval;
+	private final ScheduledExecutorService scheduler;
+	private final LongAdder applied = new LongAdder();
+	private final LongAdder malformed = new LongAdder();
+	private long position;
+	private Object fileKey;
+	private Clock clock = Clock.systemUTC();
+
+	public RevocationFeed(Path file, RevocationList revocationList, Duration pollInterval, Duration pruneInterval) {
+		Assert.notNull(file, "file cannot be null");
+		Assert.notNull(revocationList, "revocationList cannot be null");
+		Assert.isTrue(!pollInterval.isNegative() && !pollInterval.isZero(), "pollInterval must be positive");
+		Assert.isTrue(!pruneInterval.isNegative() && !pruneInterval.isZero(), "pruneInterval must be positive");
+		this.file = file;
+		this.revocationList = revocationList;
+		this.pollInterval = pollInterval;
+		this.pruneInterval = pruneInterval;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "revocation-feed");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Reads the whole file, then starts polling it
+	 * The first read happens on the calling thread so that the application does not
+	 * accept a revoked token while starting
+	 */
+	public void start() {
+		pollQuietly();
+		long poll = this.pollInterval.toMillis();
+		long prune = this.pruneInterval.toMillis();
+		this.scheduler.scheduleWithFixedDelay(this::pollQuietly, poll, poll, TimeUnit.MILLISECONDS);
+		this.scheduler.scheduleWithFixedDelay(this::pruneQuietly, prune, prune, TimeUnit.MILLISECONDS);
+	}
+
+	private void pollQuietly() {
+		try {
+			poll();
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Unable to read the revocation feed {}, keeping the current entries", this.file, e);
+		}
+	}
+
+	private void pruneQuietly() {
+		try {
+			int pruned = this.revocationList.prune(this.clock.instant());
+			logger.debug("Pruned {} expired revocations", pruned);
+		} catch (RuntimeException e) {
+			logger.warn("Unable to prune the revocation list", e);
+		}
+	}
+
+	/**
+	 * Applies the complete lines appended since the previous poll
+	 * A line still being written is left for the next poll
+	 */
+	void poll() throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(this.file, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			return;
+		}
+		if (attributes.size() < this.position || !Objects.equals(attributes.fileKey(), this.fileKey)) {
+			if (this.fileKey != null) {
+				logger.info("Revocation feed {} was replaced, reloading it", this.file);
+			}
+			this.revocationList.clear();
+			this.position = 0;
+			this.fileKey = attributes.fileKey();
+		}
+		if (attributes.size() == this.position) {
+			return;
+		}
+
+		byte[] appended = readFrom(this.position);
+		int lineStart = 0;
+		for (int i = 0; i < appended.length; i++) {
+			if (appended[i] == '\n') {
+				apply(new String(appended, lineStart, i - lineStart, StandardCharsets.UTF_8).trim());
+				lineStart = i + 1;
+			}
+		}
+		this.position += lineStart;
+	}
+
+	private byte[] readFrom(long offset) throws IOException {
+		try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+			channel.position(offset);
+			ByteArrayOutputStream appended = new ByteArrayOutputStream();
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			while (channel.read(buffer) > 0) {
+				appended.write(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			return appended.toByteArray();
+		}
+	}
+
+	private void apply(String line) {
+		if (line.isEmpty() || line.charAt(0) == '#') {
+			return;
+		}
+		String[] fields = line.split("\\s+");
+		try {
+			if ("revoke-token".equals(fields[0]) && fields.length == 3) {
+				this.revocationList.revokeToken(fields[1], epochSecond(fields[2]));
+			} else if ("revoke-subject".equals(fields[0]) && fields.length == 4) {
+				this.revocationList.revokeSubject(fields[1], epochSecond(fields[2]), epochSecond(fields[3]));
+			} else if ("reinstate-token".equals(fields[0]) && fields.length == 2) {
+				this.revocationList.reinstateToken(fields[1]);
+			} else if ("reinstate-subject".equals(fields[0]) && fields.length == 2) {
+				this.revocationList.reinstateSubject(fields[1]);
+			} else {
+				throw new IllegalArgumentException("Unknown update");
+			}
+			this.applied.increment();
+		} catch (IllegalArgumentException e) {
+			this.malformed.increment();
+			logger.warn("Ignoring malformed revocation feed line: {}", line);
+		}
+	}
+
+	private static Instant epochSecond(String value) {
+		return Instant.ofEpochSecond(Long.parseLong(value));
+	}
+
+	/**
+	 * @return How many updates were applied to the revocation list
+	 */
+	public long getAppliedCount() {
+		return this.applied.sum();
+	}
+
+	public long getMalformedCount() {
+		return this.malformed.sum();
+	}
+
+	public void setClock(Clock clock) {
+		Assert.notNull(clock, "clock cannot be null");
+		this.clock = clock;
+	}
+
+	@Override
+	public void close() {
+		this.scheduler.shutdownNow();
+	}
+
+}
@@ -0,0 +1,189 @@
+package com.imolczek.training.spring.springsecuritysample.security.revocation;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.util.Assert;
+
+/**
+ * The revoked tokens (by jti) and the revoked sessions of a subject (every token of the
+ * subject issued up to the revocation instant)
+ * Checks are lock-free: a Bloom filter rules out the tokens that are not revoked, and
+ * only its positives are looked up in the exact sets
+ * Each entry is kept until the tokens it revokes have expired anyway, then pruned
+ * Updates are serialized, they are expected from a single feed
+ */
+public class RevocationList {
+
+	private static final char TOKEN = 'j';
+	private static final char SUBJECT = 's';
+
+	private final int expectedEntries;
+	private final double falsePositiveRate;
+	private final Map<String, Long> tokens = new ConcurrentHashMap<>();
+	private final Map<String, SubjectRevocation> subjects = new ConcurrentHashMap<>();
+	private final LongAdder revoked = new LongAdder();
+	private final LongAdder falsePositives = new LongAdder();
+	private volatile BloomFilter filter;
+	private int filterEntries;
+
+	/**
+	 * @param expectedEntries The number of live entries the filter is sized for, it grows beyond
+	 * @param falsePositiveRate The share of the valid tokens looked up in the exact sets
+	 */
+	public RevocationList(int expectedEntries, double falsePositiveRate) {
+		Assert.isTrue(expectedEntries > 0, "expectedEntries must be positive");
+		Assert.isTrue(falsePositiveRate > 0 && falsePositiveRate < 1, "falsePositiveRate must be between 0 and 1");
+		this.expectedEntries = expectedEntries;
+		this.falsePositiveRate = falsePositiveRate;
+		this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+	}
+
+	/**
+	 * @param jwt A verified token
+	 * @return true if the token, or the sessions of its subject, have been revoked
+	 */
+	public boolean isRevoked(Jwt jwt) {
+		BloomFilter current = this.filter;
+		String jti = jwt.getId();
+		if (jti != null && current.mightContain(BloomFilter.hash(TOKEN, jti))) {
+			if (this.tokens.containsKey(jti)) {
+				this.revoked.increment();
+				return true;
+			}
+			this.falsePositives.increment();
+		}
+		String subject = jwt.getSubject();
+		if (subject != null && current.mightContain(BloomFilter.hash(SUBJECT, subject))) {
+			SubjectRevocation revocation = this.subjects.get(subject);
+			if (revocation != null) {
+				// Tokens without an iat cannot be told apart from the revoked ones
+				Instant issuedAt = jwt.getIssuedAt();
+				if (issuedAt == null || issuedAt.getEpochSecond() <= revocation.revokedAt) {
+					this.revoked.increment();
+					return true;
+				}
+			} else {
+				this.falsePositives.increment();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param jti The id of the revoked token
+	 * @param expiresAt When the token expires, and the entry can be pruned
+	 */
+	public synchronized void revokeToken(String jti, Instant expiresAt) {
+		Assert.hasText(jti, "jti cannot be empty");
+		// Filter first: a reader finding the entry in the set has already been able to see the bits
+		addToFilter(TOKEN, jti);
+		this.tokens.put(jti, expiresAt.getEpochSecond());
+	}
+
+	/**
+	 * @param subject The subject whose sessions are revoked
+	 * @param revokedAt Tokens of the subject issued up to this instant are revoked
+	 * @param expiresAt When the last of these tokens expires, and the entry can be pruned
+	 */
+	public synchronized void revokeSubject(String subject, Instant revokedAt, Instant expiresAt) {
+		Assert.hasText(subject, "subject cannot be empty");
+		addToFilter(SUBJECT, subject);
+		this.subjects.put(subject, new SubjectRevocation(revokedAt.getEpochSecond(), expiresAt.getEpochSecond()));
+	}
+
+	public synchronized void reinstateToken(String jti) {
+		this.tokens.remove(jti);
+	}
+
+	public synchronized void reinstateSubject(String subject) {
+		this.subjects.remove(subject);
+	}
+
+	public synchronized void clear() {
+		this.tokens.clear();
+		this.subjects.clear();
+		rebuildFilter();
+	}
+
+	/**
+	 * Drops the entries whose tokens have expired, and rebuilds the filter so that it
+	 * forgets them as well as the reinstated entries
+	 * @return The number of entries dropped
+	 */
+	public synchronized int prune(Instant now) {
+		long epochSecond = now.getEpochSecond();
+		int before = size();
+		this.tokens.values().removeIf(expiresAt -> expiresAt <= epochSecond);
+		this.subjects.values().removeIf(revocation -> revocation.expiresAt <= epochSecond);
+		int pruned = before - size();
+		if (pruned > 0 || this.filterEntries > size()) {
+			rebuildFilter();
+		}
+		return pruned;
+	}
+
+	private void addToFilter(char seed, String value) {
+		BloomFilter current = this.filter;
+		if (this.filterEntries >= current.getCapacity()) {
+			rebuildFilter();
+			current = this.filter;
+		}
+		current.put(BloomFilter.hash(seed, value));
+		this.filterEntries++;
+	}
+
+	/**
+	 * The new filter is filled before being published, readers keep using the current one meanwhile
+	 */
+	private void rebuildFilter() {
+		int entries = size();
+		BloomFilter rebuilt = new BloomFilter(Math.max(this.expectedEntries, entries * 2), this.falsePositiveRate);
+		this.tokens.keySet().forEach(jti -> rebuilt.put(BloomFilter.hash(TOKEN, jti)));
+		this.subjects.keySet().forEach(subject -> rebuilt.put(BloomFilter.hash(SUBJECT, subject)));
+		this.filter = rebuilt;
+		this.filterEntries = entries;
+	}
+
+	public int size() {
+		return getTokenCount() + getSubjectCount();
+	}
+
+	public int getTokenCount() {
+		return this.tokens.size();
+	}
+
+	public int getSubjectCount() {
+		return this.subjects.size();
+	}
+
+	/**
+	 * @return How many checked tokens were found revoked
+	 */
+	public long getRevokedCount() {
+		return this.revoked.sum();
+	}
+
+	/**
+	 * @return How many checks passed the filter but not the exact sets
+	 */
+	public long getFalsePositiveCount() {
+		return this.falsePositives.sum();
+	}
+
+	private static final class SubjectRevocation {
+
+		private final long revokedAt;
+		private final long expiresAt;
+
+		SubjectRevocation(long revokedAt, long expiresAt) {
+			this.revokedAt = revokedAt;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+
+}
@@ -0,0 +1,23 @@
+package com.imolczek.training.spring.springsecuritysample.security.revocation;
+
+import org.springframework.security.oauth2.jwt.JwtException;
+
+/**
+ * Thrown for a valid token that has been revoked
+ * It carries no stack trace: the rejection is an expected outcome, and a replayed
+ * revoked token should not cost a stack walk per request
+ */
+public class RevokedTokenException extends JwtException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RevokedTokenException() {
+		super("Revoked token");
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+
+}
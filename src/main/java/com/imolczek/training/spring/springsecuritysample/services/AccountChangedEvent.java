@@ -0,0 +1,43 @@
+package com.imolczek.training.spring.springsecuritysample.services;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when an account is created or assigned to another holder, so that the
+ * accounts cached for the holders involved can be invalidated
+ */
+public class AccountChangedEvent extends ApplicationEvent {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String accountNumber;
+	private final String accountHolderId;
+	private final String previousAccountHolderId;
+
+	/**
+	 * @param source The store the account was saved to
+	 * @param accountNumber The account number
+	 * @param accountHolderId The holder of the account
+	 * @param previousAccountHolderId The previous holder of the account, null for a new account
+	 */
+	public AccountChangedEvent(Object source, String accountNumber, String accountHolderId,
+			String previousAccountHolderId) {
+		super(source);
+		this.accountNumber = accountNumber;
+		this.accountHolderId = accountHolderId;
+		this.previousAccountHolderId = previousAccountHolderId;
+	}
+
+	public String getAccountNumber() {
+		return accountNumber;
+	}
+
+	public String getAccountHolderId() {
+		return accountHolderId;
+	}
+
+	public String getPreviousAccountHolderId() {
+		return previousAccountHolderId;
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.imolczek.training.spring.springsecuritysample.services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.BatchTooLargeException;
+import com.imolczek.training.spring.springsecuritysample.exceptions.InvalidBatchException;
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsResult;
+
+/**
+ * Fetches the details of many accounts in a single call
+ * Ownership of all the accounts is checked in one pass, then the details of the
+ * owned accounts are fetched in parallel on a bounded executor
+ * A failing item is reported in its own result and never fails the whole batch
+ */
+@Service
+public class AccountDetailsBatchService {
+
+	private static Logger logger = LoggerFactory.getLogger(AccountDetailsBatchService.class);
+
+	public static final String WRONG_ACCOUNT_HOLDER = "wrong_account_holder";
+	public static final String INTERNAL_ERROR = "internal_error";
+
+	private AccountsService accountsService;
+	private Executor executor;
+
+	@Value("${sample.accounts.batch.max-size:500}") int maxBatchSize;
+
+	public AccountDetailsBatchService(AccountsService accountsService, @Qualifier("accountsBatchExecutor") Executor executor) {
+		this.accountsService = accountsService;
+		this.executor = executor;
+	}
+
+	/**
+	 * @param accountNumbers The requested account numbers, duplicates being ignored
+	 * @param accountHolderId The authenticated account holder
+	 * @return One result per distinct account number, in the requested order
+	 * @throws InvalidBatchException If there is no account number, or a null or blank one
+	 * @throws BatchTooLargeException If there are more accounts than allowed in a batch
+	 */
+	public List<AccountDetailsResult> details(List<String> accountNumbers, String accountHolderId) {
+		Set<String> distinct = distinct(accountNumbers, maxBatchSize);
+		Set<String> held = accountsService.heldAmong(distinct, accountHolderId);
+
+		List<CompletableFuture<AccountDetailsResult>> futures = new ArrayList<>(distinct.size());
+		for (String accountNumber : distinct) {
+			if (held.contains(accountNumber)) {
+				futures.add(CompletableFuture.supplyAsync(() -> fetch(accountNumber, accountHolderId), executor));
+			} else {
+				futures.add(CompletableFuture.completedFuture(
+						AccountDetailsResult.failure(accountNumber, 403, WRONG_ACCOUNT_HOLDER)));
+			}
+		}
+
+		List<AccountDetailsResult> results = new ArrayList<>(futures.size());
+		for (CompletableFuture<AccountDetailsResult> future : futures) {
+			results.add(future.join());
+		}
+		return results;
+	}
+
+	/**
+	 * Validates a batch before any account is looked up
+	 * @param accountNumbers The requested account numbers, possibly null
+	 * @param maxBatchSize The maximum number of distinct accounts
+	 * @return The distinct account numbers, in the requested order
+	 * @throws InvalidBatchException If there is no account number, or a null or blank one
+	 * @throws BatchTooLargeException If there are more accounts than allowed in a batch
+	 */
+	public static Set<String> distinct(List<String> accountNumbers, int maxBatchSize) {
+		if (accountNumbers == null || accountNumbers.isEmpty()) {
+			throw new InvalidBatchException();
+		}
+		Set<String> distinct = new LinkedHashSet<>(accountNumbers.size());
+		for (String accountNumber : accountNumbers) {
+			if (accountNumber == null || accountNumber.trim().isEmpty()) {
+				throw new InvalidBatchException();
+			}
+			distinct.add(accountNumber);
+		}
+		if (distinct.size() > maxBatchSize) {
+			throw new BatchTooLargeException();
+		}
+		return distinct;
+	}
+
+	private AccountDetailsResult fetch(String accountNumber, String accountHolderId) {
+		try {
+			return AccountDetailsResult.success(accountsService.details(accountNumber, accountHolderId));
+		} catch (WrongAccountHolderException e) {
+			return AccountDetailsResult.failure(accountNumber, 403, WRONG_ACCOUNT_HOLDER);
+		} catch (RuntimeException e) {
+			logger.error("Unable to fetch the details of account {}", accountNumber, e);
+			return AccountDetailsResult.failure(accountNumber, 500, INTERNAL_ERROR);
+		}
+	}
+
+}
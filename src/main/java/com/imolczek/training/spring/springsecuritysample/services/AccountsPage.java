@@ -0,0 +1,33 @@
+package com.imolczek.training.spring.springsecuritysample.services;
+
+import java.util.List;
+
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+
+/**
+ * A page of accounts, ordered by account number
+ */
+public class AccountsPage {
+
+	private final List<AccountResource> accounts;
+	private final String lastAccountNumber;
+	private final boolean hasMore;
+
+	public AccountsPage(List<AccountResource> accounts, boolean hasMore) {
+		this.accounts = accounts;
+		this.lastAccountNumber = accounts.isEmpty() ? null : accounts.get(accounts.size() - 1).getAccountNumber();
+		this.hasMore = hasMore;
+	}
+
+	public List<AccountResource> getAccounts() {
+		return accounts;
+	}
+
+	/**
+	 * @return The account number to resume from, or null if this is the last page
+	 */
+	public String getNextAfter() {
+		return hasMore ? lastAccountNumber : null;
+	}
+
+}
@@ -1,6 +1,12 @@
 package com.imolczek.training.spring.springsecuritysample.services;
 
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
 import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
@@ -10,5 +16,80 @@ public interface AccountsService {
 	public List<AccountResource> list(String accountHolderId);
 
 	public AccountResource details(String accountNumber, String accountHolderId) throws WrongAccountHolderException;
-	
+
+	/**
+	 * Lists one page of the holder's accounts, ordered by account number
+	 * The default implementation pages over list(); stores that keep the accounts
+	 * sorted should override it
+	 * @param accountHolderId The account holder
+	 * @param afterAccountNumber The last account number of the previous page, null for the first page
+	 * @param limit The maximum number of accounts in the page
+	 * @return The page
+	 */
+	public default AccountsPage page(String accountHolderId, String afterAccountNumber, int limit) {
+		List<AccountResource> accounts = list(accountHolderId).stream()
+				.filter(account -> afterAccountNumber == null || account.getAccountNumber().compareTo(afterAccountNumber) > 0)
+				.sorted(Comparator.comparing(AccountResource::getAccountNumber))
+				.limit(limit + 1L)
+				.collect(Collectors.toList());
+		boolean hasMore = accounts.size() > limit;
+		return new AccountsPage(hasMore ? accounts.subList(0, limit) : accounts, hasMore);
+	}
+
+	/**
+	 * Streams the holder's accounts, so that they can be serialized one by one
+	 * The default implementation streams over list(); stores should override it
+	 * so that the accounts are never all materialized at once
+	 * @param accountHolderId The account holder
+	 * @return The holder's accounts
+	 */
+	public default Stream<AccountResource> stream(String accountHolderId) {
+		return list(accountHolderId).stream();
+	}
+
+	/**
+	 * Checks the ownership of many accounts at once
+	 * The default implementation calls details() for each account; stores with an
+	 * ownership index should override it
+	 * @param accountNumbers The account numbers
+	 * @param accountHolderId The supposed account holder
+	 * @return The account numbers that belong to the holder
+	 */
+	public default Set<String> heldAmong(Collection<String> accountNumbers, String accountHolderId) {
+		Set<String> held = new HashSet<>();
+		for (String accountNumber : accountNumbers) {
+			try {
+				details(accountNumber, accountHolderId);
+				held.add(accountNumber);
+			} catch (WrongAccountHolderException e) {
+				// Not held by this holder
+			}
+		}
+		return held;
+	}
+
+	/**
+	 * Version of the holder's list of accounts, which changes whenever an account is
+	 * added to or removed from the list
+	 * Cheap to compute compared to the list itself, so that unchanged lists can be
+	 * answered with a 304 response without being loaded
+	 * The default implementation does not track versions
+	 * @param accountHolderId The account holder
+	 * @return The version, or null if unknown
+	 */
+	public default Long listVersion(String accountHolderId) {
+		return null;
+	}
+
+	/**
+	 * Version of an account's details, which changes whenever the account does
+	 * The default implementation does not track versions
+	 * @param accountNumber The account number
+	 * @param accountHolderId The supposed account holder
+	 * @return The version, or null if unknown or if the account does not belong to the holder
+	 */
+	public default Long detailsVersion(String accountNumber, String accountHolderId) {
+		return null;
+	}
+
 }
@@ -0,0 +1,316 @@
+package com.imolczek.training.spring.springsecuritysample.services;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.springframework.util.Assert;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+
+/**
+ * Decorates an AccountsService with a read-through cache of each holder's accounts list
+ * and account details
+ * - entries expire after the TTL, and the number of holders and of details per holder
+ *   are bounded
+ * - concurrent loads of the same entry are coalesced into a single call to the delegate
+ * - denials are cached too: a WrongAccountHolderException is replayed from the cache
+ * - everything cached for a holder is dropped when one of its accounts changes, see
+ *   AccountChangedEvent
+ * A load still in progress when its holder is invalidated completes into the dropped
+ * entries, so that it cannot bring a stale value back
+ * The holder's list is cached once and also serves page, stream and heldAmong, so that
+ * every way of reading the accounts shares the same entry; only the versions go to
+ * the delegate
+ */
+public class CachingAccountsService implements AccountsService {
+
+	private static final String LIST_KEY = "\u0000list";
+	private static final Object DENIED = new Object();
+
+	private final AccountsService delegate;
+	private final int maxHolders;
+	private final int maxEntriesPerHolder;
+	private final long ttlMillis;
+	private final Map<String, HolderCache> holders = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	private final LongAdder loadNanos = new LongAdder();
+	private Clock clock = Clock.systemUTC();
+
+	public CachingAccountsService(AccountsService delegate, int maxHolders, int maxEntriesPerHolder, Duration ttl) {
+		Assert.notNull(delegate, "delegate cannot be null");
+		Assert.isTrue(maxHolders > 0, "maxHolders must be positive");
+		Assert.isTrue(maxEntriesPerHolder > 0, "maxEntriesPerHolder must be positive");
+		Assert.isTrue(ttl != null && !ttl.isNegative() && !ttl.isZero(), "ttl must be a positive duration");
+		this.delegate = delegate;
+		this.maxHolders = maxHolders;
+		this.maxEntriesPerHolder = maxEntriesPerHolder;
+		this.ttlMillis = ttl.toMillis();
+	}
+
+	public AccountsService getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public List<AccountResource> list(String accountHolderId) {
+		return accounts(accountHolderId).list;
+	}
+
+	@Override
+	public AccountResource details(String accountNumber, String accountHolderId) throws WrongAccountHolderException {
+		Object details = get(accountHolderId, accountNumber, () -> {
+			try {
+				return this.delegate.details(accountNumber, accountHolderId);
+			} catch (WrongAccountHolderException e) {
+				return DENIED;
+			}
+		});
+		if (details == DENIED) {
+			throw WrongAccountHolderException.INSTANCE;
+		}
+		return (AccountResource) details;
+	}
+
+	@Override
+	public AccountsPage page(String accountHolderId, String afterAccountNumber, int limit) {
+		return accounts(accountHolderId).page(afterAccountNumber, limit);
+	}
+
+	@Override
+	public Stream<AccountResource> stream(String accountHolderId) {
+		return accounts(accountHolderId).list.stream();
+	}
+
+	@Override
+	public Set<String> heldAmong(Collection<String> accountNumbers, String accountHolderId) {
+		Set<String> numbers = accounts(accountHolderId).numbers;
+		Set<String> held = new HashSet<>();
+		for (String accountNumber : accountNumbers) {
+			if (numbers.contains(accountNumber)) {
+				held.add(accountNumber);
+			}
+		}
+		return held;
+	}
+
+	@Override
+	public Long listVersion(String accountHolderId) {
+		return this.delegate.listVersion(accountHolderId);
+	}
+
+	@Override
+	public Long detailsVersion(String accountNumber, String accountHolderId) {
+		return this.delegate.detailsVersion(accountNumber, accountHolderId);
+	}
+
+	/**
+	 * Drops everything cached for the holders of the changed account
+	 * @param event The account change
+	 */
+	public void invalidate(AccountChangedEvent event) {
+		invalidate(event.getAccountHolderId());
+		if (event.getPreviousAccountHolderId() != null) {
+			invalidate(event.getPreviousAccountHolderId());
+		}
+	}
+
+	public void invalidate(String accountHolderId) {
+		if (this.holders.remove(accountHolderId) != null) {
+			this.invalidations.increment();
+		}
+	}
+
+	private HolderAccounts accounts(String accountHolderId) {
+		return (HolderAccounts) get(accountHolderId, LIST_KEY,
+				() -> new HolderAccounts(this.delegate.list(accountHolderId)));
+	}
+
+	private Object get(String accountHolderId, String key, Supplier<Object> loader) {
+		long now = this.clock.millis();
+		HolderCache holder = this.holders.get(accountHolderId);
+		if (holder == null) {
+			if (this.holders.size() >= this.maxHolders) {
+				evictHolders(now);
+			}
+			holder = this.holders.computeIfAbsent(accountHolderId, id -> new HolderCache());
+		}
+
+		Entry cached = holder.entries.get(key);
+		if (cached != null && now < cached.expiresAt) {
+			this.hits.increment();
+			return cached.value;
+		}
+
+		CompletableFuture<Object> load = new CompletableFuture<>();
+		CompletableFuture<Object> pending = holder.loads.putIfAbsent(key, load);
+		if (pending != null) {
+			this.coalesced.increment();
+			return await(pending);
+		}
+		try {
+			this.misses.increment();
+			long start = System.nanoTime();
+			Object value = loader.get();
+			this.loadNanos.add(System.nanoTime() - start);
+			if (holder.entries.size() >= this.maxEntriesPerHolder) {
+				holder.evict(now);
+			}
+			holder.entries.put(key, new Entry(value, now + this.ttlMillis));
+			load.complete(value);
+			return value;
+		} catch (RuntimeException e) {
+			load.completeExceptionally(e);
+			throw e;
+		} finally {
+			holder.loads.remove(key, load);
+		}
+	}
+
+	/**
+	 * Drops the holders whose entries have all expired, then arbitrary holders until
+	 * the cache is back under 90% of its maximum size
+	 */
+	private void evictHolders(long now) {
+		int target = this.maxHolders - Math.max(1, this.maxHolders / 10);
+		this.holders.values().removeIf(holder -> holder.isExpired(now));
+		Iterator<HolderCache> values = this.holders.values().iterator();
+		while (this.holders.size() > target && values.hasNext()) {
+			values.next();
+			values.remove();
+		}
+	}
+
+	private static Object await(CompletableFuture<Object> pending) {
+		try {
+			return pending.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * @return How many lookups waited for the load of the same entry in progress
+	 */
+	public long getCoalescedCount() {
+		return this.coalesced.sum();
+	}
+
+	public long getInvalidationCount() {
+		return this.invalidations.sum();
+	}
+
+	/**
+	 * @return The total time spent in the delegate loading entries, in nanoseconds
+	 */
+	public double getLoadNanos() {
+		return this.loadNanos.sum();
+	}
+
+	public int getHolderCount() {
+		return this.holders.size();
+	}
+
+	public void setClock(Clock clock) {
+		Assert.notNull(clock, "clock cannot be null");
+		this.clock = clock;
+	}
+
+	/**
+	 * The entries cached for a holder: its accounts, and the details or denial of
+	 * each account number it asked for
+	 */
+	private final class HolderCache {
+
+		private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+		private final Map<String, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+
+		void evict(long now) {
+			this.entries.values().removeIf(entry -> now >= entry.expiresAt);
+			// A holder probing many account numbers only flushes its own entries
+			if (this.entries.size() >= CachingAccountsService.this.maxEntriesPerHolder) {
+				this.entries.clear();
+			}
+		}
+
+		boolean isExpired(long now) {
+			return this.loads.isEmpty() && this.entries.values().stream().allMatch(entry -> now >= entry.expiresAt);
+		}
+
+	}
+
+	/**
+	 * A holder's accounts, in the order of the delegate's list, and indexed by account
+	 * number for paging and ownership checks
+	 */
+	private static final class HolderAccounts {
+
+		private final List<AccountResource> list;
+		private final List<AccountResource> sorted;
+		private final String[] sortedNumbers;
+		private final Set<String> numbers;
+
+		HolderAccounts(List<AccountResource> accounts) {
+			List<AccountResource> sorted = new ArrayList<>(accounts);
+			sorted.sort(Comparator.comparing(AccountResource::getAccountNumber));
+			this.list = Collections.unmodifiableList(new ArrayList<>(accounts));
+			this.sorted = Collections.unmodifiableList(sorted);
+			this.sortedNumbers = sorted.stream().map(AccountResource::getAccountNumber).toArray(String[]::new);
+			this.numbers = new HashSet<>(Arrays.asList(this.sortedNumbers));
+		}
+
+		AccountsPage page(String afterAccountNumber, int limit) {
+			int from = 0;
+			if (afterAccountNumber != null) {
+				int index = Arrays.binarySearch(this.sortedNumbers, afterAccountNumber);
+				from = index >= 0 ? index + 1 : -index - 1;
+			}
+			int to = (int) Math.min((long) from + limit, this.sorted.size());
+			return new AccountsPage(this.sorted.subList(from, to), to < this.sorted.size());
+		}
+
+	}
+
+	private static final class Entry {
+
+		private final Object value;
+		private final long expiresAt;
+
+		Entry(Object value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+
+}
@@ -0,0 +1,32 @@
+package com.imolczek.training.spring.springsecuritysample.services;
+
+import java.util.List;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsResult;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking flavour of AccountsService, used by the reactive profile
+ */
+public interface ReactiveAccountsService {
+
+	public Flux<AccountResource> list(String accountHolderId);
+
+	public Mono<AccountsPage> page(String accountHolderId, String afterAccountNumber, int limit);
+
+	/**
+	 * @return The account, or an error signal with a WrongAccountHolderException
+	 */
+	public Mono<AccountResource> details(String accountNumber, String accountHolderId);
+
+	/**
+	 * @return One result per distinct account number, in the requested order
+	 * @see AccountDetailsBatchService#details(List, String)
+	 */
+	public Flux<AccountDetailsResult> details(List<String> accountNumbers, String accountHolderId);
+
+}
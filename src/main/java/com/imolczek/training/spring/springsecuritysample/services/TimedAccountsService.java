@@ -0,0 +1,121 @@
+package com.imolczek.training.spring.springsecuritysample.services;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Decorates an AccountsService to time each operation, tagged with its outcome:
+ * success, wrong_account_holder or error
+ * The stream operation is timed until the stream is opened, not until it is consumed
+ */
+public class TimedAccountsService implements AccountsService {
+
+	public static final String METRIC_NAME = "sample.accounts.service";
+
+	private final AccountsService delegate;
+	private final OperationTimers list;
+	private final OperationTimers details;
+	private final OperationTimers page;
+	private final OperationTimers stream;
+	private final OperationTimers heldAmong;
+	private final OperationTimers listVersion;
+	private final OperationTimers detailsVersion;
+
+	public TimedAccountsService(AccountsService delegate, MeterRegistry registry) {
+		this.delegate = delegate;
+		this.list = new OperationTimers(registry, "list");
+		this.details = new OperationTimers(registry, "details");
+		this.page = new OperationTimers(registry, "page");
+		this.stream = new OperationTimers(registry, "stream");
+		this.heldAmong = new OperationTimers(registry, "heldAmong");
+		this.listVersion = new OperationTimers(registry, "listVersion");
+		this.detailsVersion = new OperationTimers(registry, "detailsVersion");
+	}
+
+	public AccountsService getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public List<AccountResource> list(String accountHolderId) {
+		return list.time(() -> delegate.list(accountHolderId));
+	}
+
+	@Override
+	public AccountResource details(String accountNumber, String accountHolderId) throws WrongAccountHolderException {
+		return details.time(() -> delegate.details(accountNumber, accountHolderId));
+	}
+
+	@Override
+	public AccountsPage page(String accountHolderId, String afterAccountNumber, int limit) {
+		return page.time(() -> delegate.page(accountHolderId, afterAccountNumber, limit));
+	}
+
+	@Override
+	public Stream<AccountResource> stream(String accountHolderId) {
+		return stream.time(() -> delegate.stream(accountHolderId));
+	}
+
+	@Override
+	public Set<String> heldAmong(Collection<String> accountNumbers, String accountHolderId) {
+		return heldAmong.time(() -> delegate.heldAmong(accountNumbers, accountHolderId));
+	}
+
+	@Override
+	public Long listVersion(String accountHolderId) {
+		return listVersion.time(() -> delegate.listVersion(accountHolderId));
+	}
+
+	@Override
+	public Long detailsVersion(String accountNumber, String accountHolderId) {
+		return detailsVersion.time(() -> delegate.detailsVersion(accountNumber, accountHolderId));
+	}
+
+	private static final class OperationTimers {
+
+		private final Timer success;
+		private final Timer wrongAccountHolder;
+		private final Timer error;
+
+		OperationTimers(MeterRegistry registry, String operation) {
+			this.success = timer(registry, operation, "success");
+			this.wrongAccountHolder = timer(registry, operation, "wrong_account_holder");
+			this.error = timer(registry, operation, "error");
+		}
+
+		private static Timer timer(MeterRegistry registry, String operation, String outcome) {
+			return Timer.builder(METRIC_NAME)
+					.description("Calls to the accounts service")
+					.tag("operation", operation)
+					.tag("outcome", outcome)
+					.register(registry);
+		}
+
+		<T> T time(Supplier<T> call) {
+			long start = System.nanoTime();
+			Timer timer = this.error;
+			try {
+				T result = call.get();
+				timer = this.success;
+				return result;
+			} catch (WrongAccountHolderException e) {
+				timer = this.wrongAccountHolder;
+				throw e;
+			} finally {
+				timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			}
+		}
+
+	}
+
+}
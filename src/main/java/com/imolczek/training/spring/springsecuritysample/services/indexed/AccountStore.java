@@ -0,0 +1,268 @@
+package com.imolczek.training.spring.springsecuritysample.services.indexed;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import com.imolczek.training.spring.springsecuritysample.model.Account;
+import com.imolczek.training.spring.springsecuritysample.services.AccountChangedEvent;
+
+/**
+ * In-memory account store indexed both by account number and by account holder,
+ * persisted as an append-only CSV file of "accountNumber,accountHolderId" lines
+ * Both lookups are constant-time hash lookups: an ownership check never scans the
+ * holder's accounts
+ * The accounts of a holder are kept as an immutable array sorted by account number,
+ * replaced as a whole when an account is saved; reads never lock
+ * Versions are line numbers in the store file: an account's version is the line it was
+ * last written at, and a holder's version the last line that added or removed one of
+ * its accounts, so versions survive restarts and only ever increase
+ * Line numbers restart when the file is regenerated, so versions also carry the epoch
+ * of the file, in their high 32 bits: a file created by the store starts with a
+ * random "# epoch N" line, and a regenerated file must start with a new one, otherwise
+ * its versions are plain line numbers
+ * Each save is reported to the change listener, once the indexes are up to date
+ */
+public class AccountStore {
+
+	private static final Account[] NO_ACCOUNTS = new Account[0];
+	private static final String EPOCH_PREFIX = "# epoch ";
+	private static final Comparator<Account> BY_NUMBER = Comparator.comparing(Account::getAccountNumber);
+
+	private final Path file;
+	private final Map<String, Account> byNumber;
+	private final Map<String, HolderAccounts> byHolder;
+	private long epoch;
+	private long lineCount;
+	private volatile Consumer<AccountChangedEvent> changeListener = event -> { };
+
+	private AccountStore(Path file, Map<String, Account> byNumber, Map<String, HolderAccounts> byHolder, long epoch,
+			long lineCount) {
+		this.file = file;
+		this.byNumber = byNumber;
+		this.byHolder = byHolder;
+		this.epoch = epoch;
+		this.lineCount = lineCount;
+	}
+
+	/**
+	 * Loads the store from its file, starting empty if the file does not exist yet
+	 * When an account number appears several times, the last line wins
+	 * @param file The CSV file
+	 * @return The loaded store
+	 * @throws IOException If the file cannot be read
+	 */
+	public static AccountStore load(Path file) throws IOException {
+		Map<String, Account> byNumber = new HashMap<>();
+		Map<String, Long> holderVersions = new HashMap<>();
+		long epoch = 0;
+		long lineCount = 0;
+		if (Files.exists(file)) {
+			try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					lineCount++;
+					if (lineCount == 1 && line.startsWith(EPOCH_PREFIX)) {
+						epoch = parseEpoch(line);
+					}
+					if (line.isEmpty() || line.charAt(0) == '#') {
+						continue;
+					}
+					long version = epoch | lineCount;
+					Account account = parse(line, version);
+					Account previous = byNumber.put(account.getAccountNumber(), account);
+					if (previous != null) {
+						holderVersions.put(previous.getAccountHolderId(), version);
+					}
+					holderVersions.put(account.getAccountHolderId(), version);
+				}
+			}
+		}
+
+		Map<String, List<Account>> grouped = new HashMap<>();
+		for (Account account : byNumber.values()) {
+			grouped.computeIfAbsent(account.getAccountHolderId(), holder -> new ArrayList<>()).add(account);
+		}
+		Map<String, HolderAccounts> byHolder = new ConcurrentHashMap<>(Math.max(16, holderVersions.size() * 4 / 3));
+		for (Map.Entry<String, Long> entry : holderVersions.entrySet()) {
+			List<Account> holderAccounts = grouped.getOrDefault(entry.getKey(), Collections.emptyList());
+			Account[] accounts = holderAccounts.toArray(NO_ACCOUNTS);
+			Arrays.sort(accounts, BY_NUMBER);
+			byHolder.put(entry.getKey(), new HolderAccounts(accounts, entry.getValue()));
+		}
+
+		return new AccountStore(file, new ConcurrentHashMap<>(byNumber), byHolder, epoch, lineCount);
+	}
+
+	/**
+	 * @return A "# epoch N" line with a new random epoch, to start a store file with
+	 */
+	public static String newEpochLine() {
+		return EPOCH_PREFIX + ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+	}
+
+	private static long parseEpoch(String line) {
+		try {
+			return (long) Integer.parseInt(line.substring(EPOCH_PREFIX.length()).trim()) << 32;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Malformed epoch line: " + line, e);
+		}
+	}
+
+	private static Account parse(String line, long version) {
+		int comma = line.indexOf(',');
+		if (comma <= 0 || comma == line.length() - 1) {
+			throw new IllegalArgumentException("Malformed account line: " + line);
+		}
+		Account account = new Account();
+		account.setAccountNumber(line.substring(0, comma).trim());
+		account.setAccountHolderId(line.substring(comma + 1).trim());
+		account.setVersion(version);
+		return account;
+	}
+
+	/**
+	 * @param accountNumber The account number
+	 * @return The account, or null if there is no such account
+	 */
+	public Account findByNumber(String accountNumber) {
+		return this.byNumber.get(accountNumber);
+	}
+
+	/**
+	 * @param accountHolderId The account holder
+	 * @return The holder's accounts, sorted by account number
+	 */
+	public List<Account> findByHolder(String accountHolderId) {
+		HolderAccounts holderAccounts = this.byHolder.get(accountHolderId);
+		return holderAccounts == null
+				? Collections.emptyList()
+				: Collections.unmodifiableList(Arrays.asList(holderAccounts.accounts));
+	}
+
+	/**
+	 * @param accountHolderId The account holder
+	 * @return The version of the holder's list of accounts, 0 if the holder never had any account
+	 */
+	public long holderVersion(String accountHolderId) {
+		HolderAccounts holderAccounts = this.byHolder.get(accountHolderId);
+		return holderAccounts == null ? 0L : holderAccounts.version;
+	}
+
+	/**
+	 * @param accounts Accounts sorted by account number, as returned by findByHolder
+	 * @param accountNumber An account number, not necessarily in the list
+	 * @return The index of the first account whose number is greater than accountNumber
+	 */
+	static int indexAfter(List<Account> accounts, String accountNumber) {
+		int low = 0;
+		int high = accounts.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (accounts.get(middle).getAccountNumber().compareTo(accountNumber) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @param accountNumber The account number
+	 * @param accountHolderId The supposed account holder
+	 * @return Whether the account exists and belongs to this holder
+	 */
+	public boolean isHeldBy(String accountNumber, String accountHolderId) {
+		Account account = this.byNumber.get(accountNumber);
+		return account != null && account.getAccountHolderId().equals(accountHolderId);
+	}
+
+	/**
+	 * Creates or re-assigns an account, appending it to the store file
+	 * The account's version is set to the line it was written at
+	 * A new store file is given a random epoch first
+	 * @param account The account
+	 */
+	public synchronized void save(Account account) {
+		String epochLine = this.lineCount == 0 ? newEpochLine() : null;
+		try (BufferedWriter writer = Files.newBufferedWriter(this.file, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			if (epochLine != null) {
+				writer.write(epochLine);
+				writer.newLine();
+			}
+			writer.write(account.getAccountNumber() + "," + account.getAccountHolderId());
+			writer.newLine();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to persist account " + account.getAccountNumber(), e);
+		}
+		if (epochLine != null) {
+			this.epoch = parseEpoch(epochLine);
+			this.lineCount++;
+		}
+		long version = this.epoch | ++this.lineCount;
+		account.setVersion(version);
+
+		Account previous = this.byNumber.put(account.getAccountNumber(), account);
+		if (previous != null) {
+			// The previous holder keeps an empty entry, so that its version still increases
+			this.byHolder.computeIfPresent(previous.getAccountHolderId(), (holder, holderAccounts) -> new HolderAccounts(
+					Arrays.stream(holderAccounts.accounts)
+							.filter(a -> !a.getAccountNumber().equals(account.getAccountNumber()))
+							.toArray(Account[]::new),
+					version));
+		}
+		this.byHolder.compute(account.getAccountHolderId(), (holder, holderAccounts) -> {
+			Account[] accounts = holderAccounts == null ? NO_ACCOUNTS : holderAccounts.accounts;
+			Account[] updated = Arrays.copyOf(accounts, accounts.length + 1);
+			updated[updated.length - 1] = account;
+			Arrays.sort(updated, BY_NUMBER);
+			return new HolderAccounts(updated, version);
+		});
+		this.changeListener.accept(new AccountChangedEvent(this, account.getAccountNumber(), account.getAccountHolderId(),
+				previous == null ? null : previous.getAccountHolderId()));
+	}
+
+	/**
+	 * @param changeListener Called on the saving thread, after each save
+	 */
+	public void setChangeListener(Consumer<AccountChangedEvent> changeListener) {
+		this.changeListener = changeListener;
+	}
+
+	public int size() {
+		return this.byNumber.size();
+	}
+
+	/**
+	 * The accounts of a holder, sorted by account number, and the version of that list
+	 */
+	private static final class HolderAccounts {
+
+		private final Account[] accounts;
+		private final long version;
+
+		HolderAccounts(Account[] accounts, long version) {
+			this.accounts = accounts;
+			this.version = version;
+		}
+
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.imolczek.training.spring.springsecuritysample.services.indexed;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Command line tool that generates an account store file for the IndexedAccountsService
+ * Usage: AccountsDataGenerator file holders [maxAccountsPerHolder] [seed]
+ * Holder ids are random UUIDs, like the sub claim of Keycloak access tokens, and each
+ * holder gets between 1 and maxAccountsPerHolder accounts
+ * The first holder id is printed so that tokens can be minted for it
+ * The file starts with a new epoch, whatever the seed, so that the versions of a
+ * regenerated file never repeat those of the previous one
+ */
+public final class AccountsDataGenerator {
+
+	private AccountsDataGenerator() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: AccountsDataGenerator <file> <holders> [maxAccountsPerHolder] [seed]");
+			System.exit(1);
+		}
+		Path file = Paths.get(args[0]);
+		int holders = Integer.parseInt(args[1]);
+		int maxAccountsPerHolder = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		Random random = args.length > 3 ? new Random(Long.parseLong(args[3])) : new Random();
+
+		long accounts = generate(file, holders, maxAccountsPerHolder, random);
+		System.out.println("Generated " + accounts + " accounts for " + holders + " holders in " + file);
+	}
+
+	/**
+	 * @return The number of generated accounts
+	 */
+	public static long generate(Path file, int holders, int maxAccountsPerHolder, Random random) throws IOException {
+		long accountNumber = 0;
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write(AccountStore.newEpochLine());
+			writer.newLine();
+			writer.write("# accountNumber,accountHolderId");
+			writer.newLine();
+			for (int holder = 0; holder < holders; holder++) {
+				String holderId = new UUID(random.nextLong(), random.nextLong()).toString();
+				if (holder == 0) {
+					System.out.println("First account holder: " + holderId);
+				}
+				int accounts = 1 + random.nextInt(maxAccountsPerHolder);
+				for (int i = 0; i < accounts; i++) {
+					writer.write(String.format("FR%012d", accountNumber++));
+					writer.write(',');
+					writer.write(holderId);
+					writer.newLine();
+				}
+			}
+		}
+		return accountNumber;
+	}
+
+}
@@ -0,0 +1,125 @@
+package com.imolczek.training.spring.springsecuritysample.services.indexed;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+import com.imolczek.training.spring.springsecuritysample.model.Account;
+import com.imolczek.training.spring.springsecuritysample.services.AccountsPage;
+import com.imolczek.training.spring.springsecuritysample.services.AccountsService;
+
+/**
+ * AccountsService backed by the indexed AccountStore
+ * Enabled with sample.accounts.store=indexed, the store file being set by
+ * sample.accounts.store-file
+ * Account changes are published as AccountChangedEvents
+ */
+@Service
+@ConditionalOnProperty(name = "sample.accounts.store", havingValue = "indexed")
+public class IndexedAccountsService implements AccountsService {
+
+	private static Logger logger = LoggerFactory.getLogger(IndexedAccountsService.class);
+
+	private final AccountStore store;
+
+	@Autowired
+	public IndexedAccountsService(@Value("${sample.accounts.store-file}") String storeFile,
+			ApplicationEventPublisher eventPublisher) throws IOException {
+		Path file = Paths.get(storeFile);
+		long start = System.nanoTime();
+		this.store = AccountStore.load(file);
+		this.store.setChangeListener(eventPublisher::publishEvent);
+		logger.info("Loaded {} accounts from {} in {} ms", this.store.size(), file, (System.nanoTime() - start) / 1_000_000);
+	}
+
+	public IndexedAccountsService(AccountStore store) {
+		this.store = store;
+	}
+
+	@Override
+	public List<AccountResource> list(String accountHolderId) {
+		List<Account> accounts = this.store.findByHolder(accountHolderId);
+		List<AccountResource> resources = new ArrayList<>(accounts.size());
+		for (Account account : accounts) {
+			resources.add(toResource(account));
+		}
+		return resources;
+	}
+
+	@Override
+	public AccountResource details(String accountNumber, String accountHolderId) throws WrongAccountHolderException {
+		// An unknown account is reported the same way as someone else's account,
+		// so that account numbers cannot be enumerated
+		Account account = this.store.findByNumber(accountNumber);
+		if (account == null || !account.getAccountHolderId().equals(accountHolderId)) {
+			throw WrongAccountHolderException.INSTANCE;
+		}
+		return toResource(account);
+	}
+
+	@Override
+	public AccountsPage page(String accountHolderId, String afterAccountNumber, int limit) {
+		List<Account> accounts = this.store.findByHolder(accountHolderId);
+		int from = afterAccountNumber == null ? 0 : AccountStore.indexAfter(accounts, afterAccountNumber);
+		int to = (int) Math.min(accounts.size(), (long) from + limit);
+		List<AccountResource> resources = new ArrayList<>(to - from);
+		for (Account account : accounts.subList(from, to)) {
+			resources.add(toResource(account));
+		}
+		return new AccountsPage(resources, to < accounts.size());
+	}
+
+	@Override
+	public Stream<AccountResource> stream(String accountHolderId) {
+		return this.store.findByHolder(accountHolderId).stream().map(IndexedAccountsService::toResource);
+	}
+
+	@Override
+	public Set<String> heldAmong(Collection<String> accountNumbers, String accountHolderId) {
+		Set<String> held = new HashSet<>();
+		for (String accountNumber : accountNumbers) {
+			if (this.store.isHeldBy(accountNumber, accountHolderId)) {
+				held.add(accountNumber);
+			}
+		}
+		return held;
+	}
+
+	@Override
+	public Long listVersion(String accountHolderId) {
+		return this.store.holderVersion(accountHolderId);
+	}
+
+	@Override
+	public Long detailsVersion(String accountNumber, String accountHolderId) {
+		Account account = this.store.findByNumber(accountNumber);
+		return account == null || !account.getAccountHolderId().equals(accountHolderId) ? null : account.getVersion();
+	}
+
+	public AccountStore getStore() {
+		return this.store;
+	}
+
+	static AccountResource toResource(Account account) {
+		AccountResource resource = new AccountResource();
+		resource.setAccountNumber(account.getAccountNumber());
+		return resource;
+	}
+
+}
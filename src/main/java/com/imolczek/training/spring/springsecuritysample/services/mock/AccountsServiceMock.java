@@ -1,8 +1,12 @@
 package com.imolczek.training.spring.springsecuritysample.services.mock;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
@@ -10,8 +14,12 @@ import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resourc
 import com.imolczek.training.spring.springsecuritysample.services.AccountsService;
 
 @Service
+@ConditionalOnProperty(name = "sample.accounts.store", havingValue = "mock", matchIfMissing = true)
 public class AccountsServiceMock implements AccountsService {
 
+	// The mock accounts never change
+	private static final Long MOCK_VERSION = 1L;
+
 	@Override
 	public List<AccountResource> list(String accountHolderId) {
 		
@@ -31,7 +39,7 @@ public class AccountsServiceMock implements AccountsService {
 	@Override
 	public AccountResource details(String accountNumber, String accountHolderId) throws WrongAccountHolderException {
 
-		if(accountNumber.endsWith("9")) throw new WrongAccountHolderException();
+		if(accountNumber.endsWith("9")) throw WrongAccountHolderException.INSTANCE;
 		
 		AccountResource account = new AccountResource();
 		account.setAccountNumber(accountNumber);
@@ -39,4 +47,23 @@ public class AccountsServiceMock implements AccountsService {
 		return account;
 	}
 
+	@Override
+	public Set<String> heldAmong(Collection<String> accountNumbers, String accountHolderId) {
+		Set<String> held = new HashSet<>();
+		for (String accountNumber : accountNumbers) {
+			if (!accountNumber.endsWith("9")) held.add(accountNumber);
+		}
+		return held;
+	}
+
+	@Override
+	public Long listVersion(String accountHolderId) {
+		return MOCK_VERSION;
+	}
+
+	@Override
+	public Long detailsVersion(String accountNumber, String accountHolderId) {
+		return accountNumber.endsWith("9") ? null : MOCK_VERSION;
+	}
+
 }
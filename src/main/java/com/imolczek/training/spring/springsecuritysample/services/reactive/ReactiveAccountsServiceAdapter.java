@@ -0,0 +1,93 @@
+package com.imolczek.training.spring.springsecuritysample.services.reactive;
+
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.stereotype.Service;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountDetailsResult;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+import com.imolczek.training.spring.springsecuritysample.services.AccountDetailsBatchService;
+import com.imolczek.training.spring.springsecuritysample.services.AccountsPage;
+import com.imolczek.training.spring.springsecuritysample.services.AccountsService;
+import com.imolczek.training.spring.springsecuritysample.services.ReactiveAccountsService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Exposes the configured AccountsService as a ReactiveAccountsService
+ * AccountsService implementations may block (database, remote backend), so every call
+ * is moved off the event loop to the bounded elastic scheduler
+ * Batch details are fetched with at most sample.accounts.batch.threads calls in flight
+ */
+@Service
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveAccountsServiceAdapter implements ReactiveAccountsService {
+
+	private static Logger logger = LoggerFactory.getLogger(ReactiveAccountsServiceAdapter.class);
+
+	private final AccountsService accountsService;
+	private final Scheduler scheduler = Schedulers.boundedElastic();
+
+	@Value("${sample.accounts.batch.max-size:500}") int maxBatchSize;
+	@Value("${sample.accounts.batch.threads:16}") int batchConcurrency;
+
+	public ReactiveAccountsServiceAdapter(AccountsService accountsService) {
+		this.accountsService = accountsService;
+	}
+
+	@Override
+	public Flux<AccountResource> list(String accountHolderId) {
+		return Flux.defer(() -> Flux.fromStream(this.accountsService.stream(accountHolderId)))
+				.subscribeOn(this.scheduler);
+	}
+
+	@Override
+	public Mono<AccountsPage> page(String accountHolderId, String afterAccountNumber, int limit) {
+		return Mono.fromCallable(() -> this.accountsService.page(accountHolderId, afterAccountNumber, limit))
+				.subscribeOn(this.scheduler);
+	}
+
+	@Override
+	public Mono<AccountResource> details(String accountNumber, String accountHolderId) {
+		return Mono.fromCallable(() -> this.accountsService.details(accountNumber, accountHolderId))
+				.subscribeOn(this.scheduler);
+	}
+
+	@Override
+	public Flux<AccountDetailsResult> details(List<String> accountNumbers, String accountHolderId) {
+		Set<String> distinct;
+		try {
+			distinct = AccountDetailsBatchService.distinct(accountNumbers, this.maxBatchSize);
+		} catch (RuntimeException e) {
+			return Flux.error(e);
+		}
+		return Mono.fromCallable(() -> this.accountsService.heldAmong(distinct, accountHolderId))
+				.subscribeOn(this.scheduler)
+				.flatMapMany(held -> Flux.fromIterable(distinct).flatMapSequential(accountNumber -> held.contains(accountNumber)
+						? fetch(accountNumber, accountHolderId)
+						: Mono.just(AccountDetailsResult.failure(accountNumber, 403, AccountDetailsBatchService.WRONG_ACCOUNT_HOLDER)),
+						this.batchConcurrency));
+	}
+
+	private Mono<AccountDetailsResult> fetch(String accountNumber, String accountHolderId) {
+		return details(accountNumber, accountHolderId)
+				.map(AccountDetailsResult::success)
+				.onErrorResume(WrongAccountHolderException.class, e -> Mono.just(
+						AccountDetailsResult.failure(accountNumber, 403, AccountDetailsBatchService.WRONG_ACCOUNT_HOLDER)))
+				.onErrorResume(e -> {
+					logger.error("Unable to fetch the details of account {}", accountNumber, e);
+					return Mono.just(AccountDetailsResult.failure(accountNumber, 500, AccountDetailsBatchService.INTERNAL_ERROR));
+				});
+	}
+
+}
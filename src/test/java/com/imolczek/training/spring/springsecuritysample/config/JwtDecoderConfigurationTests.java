@@ -0,0 +1,90 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.test.context.ContextConfiguration;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * Decodes real signed tokens through the whole jwtDecoder bean, on the application's
+ * classpath, the JWK set being served from a file
+ */
+@SpringBootTest
+@ContextConfiguration(initializers = JwtDecoderConfigurationTests.JwkSetInitializer.class)
+class JwtDecoderConfigurationTests {
+
+	private static RSAKey signingKey;
+
+	@Autowired
+	JwtDecoder jwtDecoder;
+
+	@Test
+	void decodesTokensSignedWithAKeyOfTheJwkSet() throws Exception {
+		Jwt jwt = this.jwtDecoder.decode(token(signingKey));
+
+		assertThat(jwt.getSubject()).isEqualTo("alice");
+		assertThat(jwt.getClaimAsString("scope")).isEqualTo("accounts:list");
+	}
+
+	@Test
+	void rejectsTokensSignedWithAnotherKey() throws Exception {
+		RSAKey otherKey = new RSAKeyGenerator(2048).keyID(signingKey.getKeyID()).generate();
+
+		assertThatThrownBy(() -> this.jwtDecoder.decode(token(otherKey))).isInstanceOf(JwtException.class);
+	}
+
+	private static String token(RSAKey key) throws JOSEException {
+		SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+				new JWTClaimsSet.Builder()
+						.subject("alice")
+						.claim("scope", "accounts:list")
+						.expirationTime(Date.from(Instant.now().plusSeconds(300)))
+						.build());
+		jwt.sign(new RSASSASigner(key));
+		return jwt.serialize();
+	}
+
+	static class JwkSetInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+		@Override
+		public void initialize(ConfigurableApplicationContext context) {
+			try {
+				signingKey = new RSAKeyGenerator(2048).keyID("test").generate();
+				Path jwks = Files.createTempFile("jwks", ".json");
+				jwks.toFile().deleteOnExit();
+				Files.write(jwks, new JWKSet(signingKey.toPublicJWK()).toString().getBytes(StandardCharsets.UTF_8));
+				TestPropertyValues.of("security.oauth2.resourceserver.jwk.jwk-set-uri=" + jwks.toUri()).applyTo(context);
+			} catch (JOSEException | IOException e) {
+				throw new IllegalStateException("Unable to create the test JWK set", e);
+			}
+		}
+
+	}
+
+}
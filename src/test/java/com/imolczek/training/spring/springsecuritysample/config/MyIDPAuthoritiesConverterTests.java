@@ -0,0 +1,75 @@
+package com.imolczek.training.spring.springsecuritysample.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+class MyIDPAuthoritiesConverterTests {
+
+	private final MyIDPAuthoritiesConverter converter = new MyIDPAuthoritiesConverter();
+
+	@Test
+	void mapsRolesAndAStringOrCollectionScope() {
+		Collection<GrantedAuthority> fromString = this.converter.convert(Jwt.withTokenValue("token")
+				.header("alg", "RS256")
+				.claim("roles", Arrays.asList("customer"))
+				.claim("scope", "accounts:list  accounts:details")
+				.build());
+		Collection<GrantedAuthority> fromCollection = this.converter.convert(Arrays.asList("customer"),
+				Arrays.asList("accounts:list", "accounts:details"));
+
+		assertThat(fromString).extracting(GrantedAuthority::getAuthority)
+				.containsExactly("ROLE_customer", "SCOPE_accounts:list", "SCOPE_accounts:details");
+		assertThat(fromCollection).isEqualTo(fromString);
+		// Both combinations share the same interned authorities
+		assertThat(new ArrayList<>(fromCollection).get(1)).isSameAs(new ArrayList<>(fromString).get(1));
+	}
+
+	@Test
+	void missingClaimsContributeNoAuthority() {
+		assertThat(this.converter.convert(null, null)).isEmpty();
+		assertThat(this.converter.convert(Jwt.withTokenValue("token")
+				.header("alg", "RS256")
+				.claim("sub", "alice")
+				.build())).isEmpty();
+		assertThat(this.converter.convert(null, "accounts:list")).extracting(GrantedAuthority::getAuthority)
+				.containsExactly("SCOPE_accounts:list");
+	}
+
+	@Test
+	void sharesTheAuthoritiesOfCombinationsSeenBefore() {
+		List<String> roles = new ArrayList<>(Arrays.asList("customer"));
+		Collection<GrantedAuthority> first = this.converter.convert(roles, "accounts:list");
+
+		assertThat(this.converter.convert(Arrays.asList("customer"), "accounts:list")).isSameAs(first);
+
+		// The cache kept its own copy of the claims
+		roles.add("admin");
+		assertThat(this.converter.convert(roles, "accounts:list")).extracting(GrantedAuthority::getAuthority)
+				.containsExactly("ROLE_customer", "ROLE_admin", "SCOPE_accounts:list");
+		assertThat(this.converter.convert(Arrays.asList("customer"), "accounts:list")).isSameAs(first);
+	}
+
+	@Test
+	void keepsConvertingOnceTheCachesAreFull() {
+		MyIDPAuthoritiesConverter converter = new MyIDPAuthoritiesConverter(1, 1);
+		Collection<GrantedAuthority> cached = converter.convert(null, "accounts:list");
+
+		Collection<GrantedAuthority> first = converter.convert(null, "accounts:details");
+		Collection<GrantedAuthority> second = converter.convert(null, "accounts:details");
+		assertThat(second).isNotSameAs(first);
+		assertThat(second).isEqualTo(first);
+		// Neither the combination nor its authority could be cached
+		assertThat(second.iterator().next()).isNotSameAs(first.iterator().next());
+
+		assertThat(converter.convert(null, "accounts:list")).isSameAs(cached);
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AsyncRequestExecutorTests {
+
+	@Test
+	void queuesCallsBeyondTheConcurrencyAndRejectsThemBeyondTheQueue() throws Exception {
+		AsyncRequestExecutor executor = new AsyncRequestExecutor(2, 1, true);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(3);
+		try {
+			for (int i = 0; i < 3; i++) {
+				executor.execute(() -> {
+					await(release);
+					done.countDown();
+				});
+			}
+			while (executor.getActiveCount() < 2) {
+				Thread.sleep(1);
+			}
+			assertThat(executor.getQueueSize()).isEqualTo(1);
+
+			assertThatThrownBy(() -> executor.execute(() -> { })).isInstanceOf(RejectedExecutionException.class);
+			assertThat(executor.getRejectedCount()).isEqualTo(1);
+
+			release.countDown();
+			assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+			while (executor.getCompletedCount() < 3) {
+				Thread.sleep(1);
+			}
+			assertThat(executor.getActiveCount()).isZero();
+			assertThat(executor.getQueueSize()).isZero();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
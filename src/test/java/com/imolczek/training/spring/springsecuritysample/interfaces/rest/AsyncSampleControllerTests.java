@@ -0,0 +1,92 @@
+package com.imolczek.training.spring.springsecuritysample.interfaces.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.JwtRequestPostProcessor;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+import com.imolczek.training.spring.springsecuritysample.services.AccountsService;
+import com.imolczek.training.spring.springsecuritysample.services.mock.AccountsServiceMock;
+
+/**
+ * Account details through AsyncSampleController: the account service runs on the
+ * AsyncRequestExecutor, and the response is written by the async dispatch
+ * The account service records the authentication it runs with, which is only there if
+ * the security context was propagated to the executor thread
+ */
+@SpringBootTest(properties = { "sample.web.async.enabled=true", "sample.accounts.store=recording" })
+@AutoConfigureMockMvc
+class AsyncSampleControllerTests {
+
+	private static final AtomicReference<Authentication> serviceAuthentication = new AtomicReference<>();
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Test
+	void answersTheDetailsOfAnAccountOfTheHolder() throws Exception {
+		MvcResult result = this.mockMvc.perform(get("/sample/api/v1/accounts/12345").with(customer("alice")))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		this.mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.accountNumber").value("12345"));
+		assertThat(serviceAuthentication.get()).isNotNull();
+		assertThat(serviceAuthentication.get().getName()).isEqualTo("alice");
+	}
+
+	@Test
+	void deniesTheDetailsOfSomeoneElsesAccount() throws Exception {
+		MvcResult result = this.mockMvc.perform(get("/sample/api/v1/accounts/12349").with(customer("bob")))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		this.mockMvc.perform(asyncDispatch(result))
+				.andExpect(status().isForbidden());
+	}
+
+	private static JwtRequestPostProcessor customer(String subject) {
+		return jwt().jwt(jwt -> jwt.subject(subject))
+				.authorities(new SimpleGrantedAuthority("SCOPE_accounts:details"), new SimpleGrantedAuthority("ROLE_customer"));
+	}
+
+	@TestConfiguration
+	static class RecordingAccountsServiceConfiguration {
+
+		@Bean
+		AccountsService recordingAccountsService() {
+			return new AccountsServiceMock() {
+
+				@Override
+				public AccountResource details(String accountNumber, String accountHolderId) throws WrongAccountHolderException {
+					serviceAuthentication.set(SecurityContextHolder.getContext().getAuthentication());
+					return super.details(accountNumber, accountHolderId);
+				}
+
+			};
+		}
+
+	}
+
+}
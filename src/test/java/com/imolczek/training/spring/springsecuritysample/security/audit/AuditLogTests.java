@@ -0,0 +1,108 @@
+package com.imolczek.training.spring.springsecuritysample.security.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.imolczek.training.spring.springsecuritysample.security.audit.AuditEvent.Decision;
+
+class AuditLogTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void writesEventsAsNdjson() throws Exception {
+		AuditLog auditLog = new AuditLog(this.directory, 16, 4, 1024 * 1024, 1, Duration.ofMillis(1));
+		auditLog.start();
+		auditLog.record(event("FR0001", Decision.GRANTED, null, 200));
+		auditLog.record(event("FR0002", Decision.DENIED, AuditInterceptor.WRONG_ACCOUNT_HOLDER, 403));
+		auditLog.close();
+
+		List<String> lines = Files.readAllLines(this.directory.resolve(AuditLog.CURRENT_FILE_NAME), StandardCharsets.UTF_8);
+		assertThat(lines).hasSize(2);
+		assertThat(lines.get(0)).contains("\"sub\":\"alice\"", "\"account\":\"FR0001\"", "\"decision\":\"GRANTED\"")
+				.doesNotContain("reason");
+		assertThat(lines.get(1)).contains("\"decision\":\"DENIED\"", "\"reason\":\"wrong_account_holder\"", "\"status\":403");
+		assertThat(auditLog.getWrittenCount()).isEqualTo(2);
+	}
+
+	@Test
+	void dropsEventsWhenTheBufferIsFull() {
+		// Not started: nothing drains the buffer
+		AuditLog auditLog = new AuditLog(this.directory, 4, 4, 1024 * 1024, 1, Duration.ofMillis(1));
+		for (int i = 0; i < 4; i++) {
+			assertThat(auditLog.record(event("FR000" + i, Decision.GRANTED, null, 200))).isTrue();
+		}
+		assertThat(auditLog.record(event("FR0005", Decision.GRANTED, null, 200))).isFalse();
+		assertThat(auditLog.getDroppedCount()).isEqualTo(1);
+		assertThat(auditLog.getPendingCount()).isEqualTo(4);
+	}
+
+	@Test
+	void rollsFilesAndKeepsTheConfiguredHistory() throws Exception {
+		AuditLog auditLog = new AuditLog(this.directory, 1024, 1, 200, 2, Duration.ofMillis(1));
+		auditLog.start();
+		for (int i = 0; i < 20; i++) {
+			auditLog.record(event("FR" + i, Decision.GRANTED, null, 200));
+			// Distinct roll timestamps
+			Thread.sleep(2);
+		}
+		auditLog.close();
+
+		try (Stream<Path> files = Files.list(this.directory)) {
+			List<String> names = files.map(file -> file.getFileName().toString()).collect(Collectors.toList());
+			assertThat(names).contains(AuditLog.CURRENT_FILE_NAME);
+			assertThat(names.stream().filter(name -> name.startsWith("audit-"))).hasSize(2);
+		}
+	}
+
+	@Test
+	void keepsWritingToTheCurrentFileWhenARollFails() throws Exception {
+		AuditLog auditLog = new AuditLog(this.directory, 1024, 1, 200, 10, Duration.ofMillis(1));
+		auditLog.setClock(Clock.fixed(Instant.parse("2020-03-01T10:00:00Z"), ZoneOffset.UTC));
+		// A non-empty directory where the current file should be rolled to
+		Path blocker = Files.createDirectories(this.directory.resolve("audit-20200301-100000-000.ndjson"));
+		Files.createFile(blocker.resolve("blocker"));
+		auditLog.start();
+
+		for (int i = 0; i < 3; i++) {
+			auditLog.record(event("FR" + i, Decision.GRANTED, null, 200));
+		}
+		while (auditLog.getWrittenCount() + auditLog.getDroppedCount() < 3) {
+			Thread.sleep(1);
+		}
+		assertThat(Files.readAllLines(this.directory.resolve(AuditLog.CURRENT_FILE_NAME), StandardCharsets.UTF_8)).hasSize(3);
+
+		// The next roll succeeds
+		Files.delete(blocker.resolve("blocker"));
+		Files.delete(blocker);
+		auditLog.record(event("FR3", Decision.GRANTED, null, 200));
+		auditLog.close();
+
+		assertThat(auditLog.getWrittenCount()).isEqualTo(4);
+		assertThat(auditLog.getDroppedCount()).isZero();
+		// Rolled after the third or the fourth event, depending on when the blocker went away
+		assertThat(Files.readAllLines(blocker, StandardCharsets.UTF_8).size()
+				+ Files.readAllLines(this.directory.resolve(AuditLog.CURRENT_FILE_NAME), StandardCharsets.UTF_8).size())
+				.isEqualTo(4);
+	}
+
+	private static AuditEvent event(String accountNumber, Decision decision, String reason, int status) {
+		return new AuditEvent(System.currentTimeMillis(), "alice", "GET", "/sample/api/v1/accounts/{accountNumber}",
+				accountNumber, decision, reason, status);
+	}
+
+}
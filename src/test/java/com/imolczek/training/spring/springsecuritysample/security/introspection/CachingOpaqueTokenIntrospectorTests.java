@@ -0,0 +1,130 @@
+package com.imolczek.training.spring.springsecuritysample.security.introspection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.DefaultOAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionException;
+import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
+
+class CachingOpaqueTokenIntrospectorTests {
+
+	private static final Instant NOW = Instant.parse("2020-03-01T10:00:00Z");
+
+	private final AtomicInteger calls = new AtomicInteger();
+
+	@Test
+	void servesActiveTokensFromTheCacheUntilTheyExpire() {
+		CachingOpaqueTokenIntrospector introspector = introspector(
+				token -> principal(NOW.plusSeconds(60)), Duration.ofMinutes(5));
+
+		introspector.introspect("token");
+		introspector.introspect("token");
+		assertThat(this.calls).hasValue(1);
+		assertThat(introspector.getHitCount()).isEqualTo(1);
+
+		introspector.setClock(clockAt(NOW.plusSeconds(60)));
+		introspector.introspect("token");
+		assertThat(this.calls).hasValue(2);
+	}
+
+	@Test
+	void boundsTheCachingOfLongLivedTokensWithTheTtl() {
+		CachingOpaqueTokenIntrospector introspector = introspector(
+				token -> principal(NOW.plus(Duration.ofHours(1))), Duration.ofSeconds(30));
+
+		introspector.introspect("token");
+		introspector.setClock(clockAt(NOW.plusSeconds(29)));
+		introspector.introspect("token");
+		assertThat(this.calls).hasValue(1);
+
+		introspector.setClock(clockAt(NOW.plusSeconds(30)));
+		introspector.introspect("token");
+		assertThat(this.calls).hasValue(2);
+	}
+
+	@Test
+	void doesNotCacheInactiveTokens() {
+		CachingOpaqueTokenIntrospector introspector = introspector(token -> {
+			throw new OAuth2IntrospectionException("Provided token isn't active");
+		}, Duration.ofMinutes(5));
+
+		assertThatThrownBy(() -> introspector.introspect("token")).isInstanceOf(OAuth2IntrospectionException.class);
+		assertThatThrownBy(() -> introspector.introspect("token")).isInstanceOf(OAuth2IntrospectionException.class);
+		assertThat(this.calls).hasValue(2);
+		assertThat(introspector.size()).isZero();
+	}
+
+	@Test
+	void coalescesConcurrentIntrospectionsOfTheSameToken() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CachingOpaqueTokenIntrospector introspector = introspector(token -> {
+			started.countDown();
+			await(release);
+			return principal(NOW.plusSeconds(60));
+		}, Duration.ofMinutes(5));
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<OAuth2AuthenticatedPrincipal> first = executor.submit(() -> introspector.introspect("token"));
+			started.await(5, TimeUnit.SECONDS);
+			Future<OAuth2AuthenticatedPrincipal> second = executor.submit(() -> introspector.introspect("token"));
+			while (introspector.getCoalescedCount() == 0 && !second.isDone()) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+
+			assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+			assertThat(this.calls).hasValue(1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private CachingOpaqueTokenIntrospector introspector(OpaqueTokenIntrospector delegate, Duration ttl) {
+		CachingOpaqueTokenIntrospector introspector = new CachingOpaqueTokenIntrospector(token -> {
+			this.calls.incrementAndGet();
+			return delegate.introspect(token);
+		}, 100, ttl);
+		introspector.setClock(clockAt(NOW));
+		return introspector;
+	}
+
+	private static OAuth2AuthenticatedPrincipal principal(Instant expiresAt) {
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put(OAuth2IntrospectionClaimNames.SUBJECT, "alice");
+		attributes.put(OAuth2IntrospectionClaimNames.EXPIRES_AT, expiresAt);
+		return new DefaultOAuth2AuthenticatedPrincipal(attributes, Collections.emptyList());
+	}
+
+	private static Clock clockAt(Instant instant) {
+		return Clock.fixed(instant, ZoneOffset.UTC);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.imolczek.training.spring.springsecuritysample.security.introspection;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.DefaultOAuth2AuthenticatedPrincipal;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionClaimNames;
+import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionException;
+
+class IntrospectingJwtDecoderTests {
+
+	@Test
+	void exposesTheIntrospectedClaimsAsAJwt() {
+		IntrospectingJwtDecoder decoder = new IntrospectingJwtDecoder(token -> new DefaultOAuth2AuthenticatedPrincipal(
+				Collections.singletonMap(OAuth2IntrospectionClaimNames.SUBJECT, "alice"), Collections.emptyList()));
+
+		assertThat(decoder.decode("token").getClaimAsString("sub")).isEqualTo("alice");
+	}
+
+	@Test
+	void tellsInactiveTokensFromIntrospectionFailures() {
+		IntrospectingJwtDecoder inactive = new IntrospectingJwtDecoder(token -> {
+			throw new OAuth2IntrospectionException(IntrospectingJwtDecoder.INACTIVE_TOKEN_MESSAGE);
+		});
+		assertThatThrownBy(() -> inactive.decode("token")).isInstanceOf(JwtException.class).hasMessage("Inactive token");
+
+		// Error responses of the introspection endpoint have no cause either
+		IntrospectingJwtDecoder failing = new IntrospectingJwtDecoder(token -> {
+			throw new OAuth2IntrospectionException("Introspection endpoint responded with 500 Internal Server Error");
+		});
+		assertThatThrownBy(() -> failing.decode("token")).isInstanceOf(JwtException.class)
+				.hasMessage("Token introspection failed")
+				.hasCauseInstanceOf(OAuth2IntrospectionException.class);
+	}
+
+}
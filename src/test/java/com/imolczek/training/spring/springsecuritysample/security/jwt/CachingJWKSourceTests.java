@@ -0,0 +1,146 @@
+package com.imolczek.training.spring.springsecuritysample.security.jwt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.util.Resource;
+
+class CachingJWKSourceTests {
+
+	@TempDir
+	Path directory;
+
+	private final AtomicInteger fetches = new AtomicInteger();
+	private volatile JWKSet served;
+	private volatile CountDownLatch release;
+
+	@Test
+	void refetchesOnceWhenAnUnknownKidShowsUp() throws Exception {
+		RSAKey first = new RSAKeyGenerator(2048).keyID("first").generate();
+		RSAKey second = new RSAKeyGenerator(2048).keyID("second").generate();
+		Path jwks = this.directory.resolve("jwks.json");
+		write(jwks, new JWKSet(first));
+
+		try (CachingJWKSource source = new CachingJWKSource(jwks.toUri(), Duration.ofHours(1), Duration.ofHours(1))) {
+			source.refresh();
+			assertThat(source.get(selector("first"), null)).extracting(JWK::getKeyID).containsExactly("first");
+
+			// Key rotation on the IDP side
+			write(jwks, new JWKSet(second));
+			assertThat(source.get(selector("second"), null)).extracting(JWK::getKeyID).containsExactly("second");
+
+			// Further unknown kids do not trigger another fetch within the refetch interval
+			write(jwks, new JWKSet(first));
+			assertThat(source.get(selector("first"), null)).isEmpty();
+			assertThat(source.getKeyCount()).isEqualTo(1);
+		}
+	}
+
+	@Test
+	void keepsServingKeysWhenTheJwkSetBecomesUnavailable() throws Exception {
+		RSAKey key = new RSAKeyGenerator(2048).keyID("key").generate();
+		Path jwks = this.directory.resolve("jwks.json");
+		write(jwks, new JWKSet(key));
+
+		try (CachingJWKSource source = new CachingJWKSource(jwks.toUri(), Duration.ofHours(1), Duration.ZERO)) {
+			source.refresh();
+			Files.delete(jwks);
+
+			assertThat(source.get(selector("unknown"), null)).isEmpty();
+			assertThat(source.get(selector("key"), null)).extracting(JWK::getKeyID).containsExactly("key");
+		}
+	}
+
+	@Test
+	void concurrentLookupsOfAnUnknownKidWaitForTheSameFetch() throws Exception {
+		RSAKey first = new RSAKeyGenerator(2048).keyID("first").generate();
+		RSAKey second = new RSAKeyGenerator(2048).keyID("second").generate();
+		this.served = new JWKSet(first);
+		this.release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try (CachingJWKSource source = new CachingJWKSource(URI.create("https://idp.example.com/jwks"),
+				Duration.ofHours(1), Duration.ofHours(1), url -> {
+					this.fetches.incrementAndGet();
+					await(this.release);
+					return new Resource(this.served.toString(), "application/json");
+				})) {
+			// Lookups received while the first fetch is in progress wait for it
+			source.start();
+			assertThat(lookups(executor, source, "first", 4)).containsExactly("first", "first", "first", "first");
+			assertThat(this.fetches).hasValue(1);
+
+			// Key rotation on the IDP side: a single refetch for all the lookups of the new kid
+			this.served = new JWKSet(second);
+			this.release = new CountDownLatch(1);
+			assertThat(lookups(executor, source, "second", 4)).containsExactly("second", "second", "second", "second");
+			assertThat(this.fetches).hasValue(2);
+			assertThat(source.getUnknownKidCount()).isEqualTo(8);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs concurrent lookups of a kid, the fetch they trigger being released once they all wait for it
+	 */
+	private List<String> lookups(ExecutorService executor, CachingJWKSource source, String kid, int count)
+			throws Exception {
+		long unknownKids = source.getUnknownKidCount() + count;
+		List<Future<List<JWK>>> futures = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			futures.add(executor.submit(() -> source.get(selector(kid), null)));
+		}
+		while (source.getUnknownKidCount() < unknownKids) {
+			Thread.sleep(1);
+		}
+		this.release.countDown();
+
+		List<String> kids = new ArrayList<>();
+		for (Future<List<JWK>> future : futures) {
+			for (JWK jwk : future.get(5, TimeUnit.SECONDS)) {
+				kids.add(jwk.getKeyID());
+			}
+		}
+		return kids;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static JWKSelector selector(String kid) {
+		return new JWKSelector(new JWKMatcher.Builder().keyID(kid).build());
+	}
+
+	private static void write(Path path, JWKSet jwkSet) throws Exception {
+		Files.write(path, jwkSet.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+}
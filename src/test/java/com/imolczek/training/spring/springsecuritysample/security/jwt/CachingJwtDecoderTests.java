@@ -0,0 +1,95 @@
+package com.imolczek.training.spring.springsecuritysample.security.jwt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+class CachingJwtDecoderTests {
+
+	private static final Instant NOW = Instant.parse("2020-03-01T10:00:00Z");
+	private static final Duration SKEW = Duration.ofSeconds(60);
+
+	private final AtomicInteger calls = new AtomicInteger();
+	private final Map<String, Instant> expirations = new HashMap<>();
+
+	@Test
+	void servesVerifiedTokensUntilTheirExpirationPlusTheClockSkew() {
+		CachingJwtDecoder decoder = decoder(100);
+		this.expirations.put("token", NOW.plusSeconds(30));
+
+		Jwt first = decoder.decode("token");
+		decoder.setClock(clockAt(NOW.plusSeconds(89)));
+		assertThat(decoder.decode("token")).isSameAs(first);
+		assertThat(this.calls).hasValue(1);
+		assertThat(decoder.getHitCount()).isEqualTo(1);
+
+		decoder.setClock(clockAt(NOW.plusSeconds(90)));
+		decoder.decode("token");
+		assertThat(this.calls).hasValue(2);
+		assertThat(decoder.getMissCount()).isEqualTo(2);
+	}
+
+	@Test
+	void doesNotCacheTokensWithoutExpiration() {
+		CachingJwtDecoder decoder = decoder(100);
+
+		decoder.decode("token");
+		decoder.decode("token");
+		assertThat(this.calls).hasValue(2);
+		assertThat(decoder.size()).isZero();
+	}
+
+	@Test
+	void evictsExpiredThenArbitraryTokensWhenFull() {
+		CachingJwtDecoder decoder = decoder(10);
+		this.expirations.put("expired", NOW.plusSeconds(1));
+		decoder.decode("expired");
+		for (int i = 0; i < 9; i++) {
+			this.expirations.put("token" + i, NOW.plusSeconds(3600));
+			decoder.decode("token" + i);
+		}
+		assertThat(decoder.size()).isEqualTo(10);
+
+		// The expired token is enough to make room
+		decoder.setClock(clockAt(NOW.plus(SKEW).plusSeconds(1)));
+		this.expirations.put("new", NOW.plusSeconds(3600));
+		decoder.decode("new");
+		assertThat(decoder.size()).isEqualTo(10);
+		assertThat(decoder.getEvictionCount()).isEqualTo(1);
+		decoder.decode("new");
+		assertThat(decoder.getHitCount()).isEqualTo(1);
+
+		// Then arbitrary tokens go, bringing the cache back under 90% before the new one
+		this.expirations.put("newer", NOW.plusSeconds(3600));
+		decoder.decode("newer");
+		assertThat(decoder.size()).isEqualTo(10);
+		assertThat(decoder.getEvictionCount()).isEqualTo(2);
+	}
+
+	private CachingJwtDecoder decoder(int maxSize) {
+		CachingJwtDecoder decoder = new CachingJwtDecoder(token -> {
+			this.calls.incrementAndGet();
+			Jwt.Builder jwt = Jwt.withTokenValue(token).header("alg", "RS256").claim("sub", "alice");
+			if (this.expirations.containsKey(token)) {
+				jwt.expiresAt(this.expirations.get(token));
+			}
+			return jwt.build();
+		}, maxSize, SKEW);
+		decoder.setClock(clockAt(NOW));
+		return decoder;
+	}
+
+	private static Clock clockAt(Instant instant) {
+		return Clock.fixed(instant, ZoneOffset.UTC);
+	}
+
+}
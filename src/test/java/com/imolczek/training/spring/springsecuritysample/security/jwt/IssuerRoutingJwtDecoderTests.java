@@ -0,0 +1,129 @@
+package com.imolczek.training.spring.springsecuritysample.security.jwt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+class IssuerRoutingJwtDecoderTests {
+
+	private static final String REALM_A = "https://idp.example.com/auth/realms/a";
+	private static final String REALM_B = "https://idp.example.com/auth/realms/b";
+
+	@Test
+	void readsTheIssuerWithoutParsingTheWholePayload() {
+		String token = token("{\"sub\":\"alice\",\"realm_access\":{\"roles\":[\"customer\"]},\"iss\":\"" + REALM_A + "\"}");
+		assertThat(IssuerRoutingJwtDecoder.readIssuer(token)).isEqualTo(REALM_A);
+		assertThat(IssuerRoutingJwtDecoder.readIssuer(token("{\"sub\":\"alice\"}"))).isNull();
+		assertThatThrownBy(() -> IssuerRoutingJwtDecoder.readIssuer("not-a-token")).isInstanceOf(JwtException.class);
+	}
+
+	@Test
+	void createsOneDecoderPerTrustedIssuer() {
+		Set<String> issuers = new HashSet<>();
+		issuers.add(REALM_A);
+		AtomicInteger created = new AtomicInteger();
+		IssuerRoutingJwtDecoder decoder = new IssuerRoutingJwtDecoder(issuers, issuer -> {
+			created.incrementAndGet();
+			return token -> Jwt.withTokenValue(token).header("alg", "none").claim("iss", issuer).build();
+		});
+
+		String token = token("{\"iss\":\"" + REALM_A + "\"}");
+		decoder.decode(token);
+		decoder.decode(token);
+		assertThat(created).hasValue(1);
+
+		assertThatThrownBy(() -> decoder.decode(token("{\"iss\":\"" + REALM_B + "\"}")))
+				.isInstanceOf(JwtException.class)
+				.hasMessage("Untrusted issuer");
+		assertThat(decoder.getDecoderCount()).isEqualTo(1);
+	}
+
+	@Test
+	void tokensOfAnIssuerWaitForTheCreationOfItsDecoder() throws Exception {
+		Set<String> issuers = new HashSet<>();
+		issuers.add(REALM_A);
+		issuers.add(REALM_B);
+		AtomicInteger created = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		IssuerRoutingJwtDecoder decoder = new IssuerRoutingJwtDecoder(issuers, issuer -> {
+			created.incrementAndGet();
+			if (REALM_A.equals(issuer)) {
+				started.countDown();
+				await(release);
+			}
+			return token -> Jwt.withTokenValue(token).header("alg", "none").claim("iss", issuer).build();
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			String tokenA = token("{\"iss\":\"" + REALM_A + "\"}");
+			Future<Jwt> first = executor.submit(() -> decoder.decode(tokenA));
+			started.await(5, TimeUnit.SECONDS);
+			Future<Jwt> second = executor.submit(() -> decoder.decode(tokenA));
+
+			// Another issuer is not held up by the creation in progress
+			assertThat(decoder.decode(token("{\"iss\":\"" + REALM_B + "\"}")).getClaimAsString("iss")).isEqualTo(REALM_B);
+			assertThat(second.isDone()).isFalse();
+
+			release.countDown();
+			assertThat(first.get(5, TimeUnit.SECONDS).getClaimAsString("iss")).isEqualTo(REALM_A);
+			assertThat(second.get(5, TimeUnit.SECONDS).getClaimAsString("iss")).isEqualTo(REALM_A);
+			assertThat(created).hasValue(2);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void retriesTheCreationOfADecoderThatFailed() {
+		AtomicInteger created = new AtomicInteger();
+		IssuerRoutingJwtDecoder decoder = new IssuerRoutingJwtDecoder(Collections.singleton(REALM_A), issuer -> {
+			if (created.incrementAndGet() == 1) {
+				throw new IllegalStateException("IDP unavailable");
+			}
+			return token -> Jwt.withTokenValue(token).header("alg", "none").claim("iss", issuer).build();
+		});
+
+		String token = token("{\"iss\":\"" + REALM_A + "\"}");
+		assertThatThrownBy(() -> decoder.decode(token)).isInstanceOf(JwtException.class);
+		assertThat(decoder.decode(token).getClaimAsString("iss")).isEqualTo(REALM_A);
+		assertThat(created).hasValue(2);
+	}
+
+	@Test
+	void requiresAnAllowlist() {
+		assertThatThrownBy(() -> new IssuerRoutingJwtDecoder(Collections.emptySet(), issuer -> null))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static String token(String payload) {
+		Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		return encoder.encodeToString("{\"alg\":\"RS256\"}".getBytes(StandardCharsets.UTF_8)) + "."
+				+ encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + ".c2ln";
+	}
+
+}
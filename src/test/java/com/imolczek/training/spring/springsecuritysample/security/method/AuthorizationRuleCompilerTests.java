@@ -0,0 +1,59 @@
+package com.imolczek.training.spring.springsecuritysample.security.method;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+class AuthorizationRuleCompilerTests {
+
+	private final AuthorityIndex authorityIndex = new AuthorityIndex();
+	private final AuthorizationRuleCompiler compiler = new AuthorizationRuleCompiler(this.authorityIndex);
+
+	@Test
+	void compilesTheControllerRules() {
+		AuthorizationRule rule = this.compiler.compile("hasAuthority('SCOPE_accounts:list') and hasAuthority('ROLE_customer')");
+
+		assertThat(matches(rule, user("SCOPE_accounts:list", "ROLE_customer"))).isTrue();
+		assertThat(matches(rule, user("SCOPE_accounts:list"))).isFalse();
+		assertThat(matches(rule, user("ROLE_customer", "SCOPE_accounts:details"))).isFalse();
+	}
+
+	@Test
+	void compilesBooleanOperatorsAndRoles() {
+		AuthorizationRule rule = this.compiler.compile("!hasRole('banned') && (hasAnyRole('customer', 'ROLE_advisor') || permitAll and false)");
+
+		assertThat(matches(rule, user("ROLE_advisor"))).isTrue();
+		assertThat(matches(rule, user("ROLE_customer", "ROLE_banned"))).isFalse();
+		assertThat(matches(rule, user("SCOPE_accounts:list"))).isFalse();
+	}
+
+	@Test
+	void isAuthenticatedRejectsAnonymousUsers() {
+		AuthorizationRule rule = this.compiler.compile("isAuthenticated()");
+
+		assertThat(matches(rule, user())).isTrue();
+		assertThat(matches(rule, new AnonymousAuthenticationToken("key", "anonymous",
+				AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS")))).isFalse();
+	}
+
+	@Test
+	void rejectsUnsupportedExpressions() {
+		assertThatIllegalArgumentException().isThrownBy(() -> this.compiler.compile("hasPermission(#id, 'read')"));
+		assertThatIllegalArgumentException().isThrownBy(() -> this.compiler.compile("hasAuthority('a') and"));
+		assertThatIllegalArgumentException().isThrownBy(() -> this.compiler.compile("hasAuthority('a', 'b')"));
+	}
+
+	private boolean matches(AuthorizationRule rule, Authentication authentication) {
+		return rule.matches(authentication, this.authorityIndex.toBitSet(authentication.getAuthorities()));
+	}
+
+	private static Authentication user(String... authorities) {
+		return new TestingAuthenticationToken("user", "password", authorities);
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.imolczek.training.spring.springsecuritysample.security.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTests {
+
+	private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+
+	@Test
+	void allowsTheBurstThenTheSustainedRate() {
+		RateLimiter rateLimiter = rateLimiter(100);
+		Quota quota = new Quota("test", 10, 3);
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(rateLimiter.tryAcquire(quota, "alice")).isZero();
+		}
+		assertThat(rateLimiter.tryAcquire(quota, "alice")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+		this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+		assertThat(rateLimiter.tryAcquire(quota, "alice")).isZero();
+		assertThat(rateLimiter.tryAcquire(quota, "alice")).isPositive();
+	}
+
+	@Test
+	void keepsSeparateBucketsPerClientAndQuota() {
+		RateLimiter rateLimiter = rateLimiter(100);
+		Quota list = new Quota("list", 1, 1);
+		Quota details = new Quota("details", 1, 1);
+
+		assertThat(rateLimiter.tryAcquire(list, "alice")).isZero();
+		assertThat(rateLimiter.tryAcquire(list, "alice")).isPositive();
+		assertThat(rateLimiter.tryAcquire(details, "alice")).isZero();
+		assertThat(rateLimiter.tryAcquire(list, "bob")).isZero();
+	}
+
+	@Test
+	void evictsIdleBucketsWhenFull() {
+		RateLimiter rateLimiter = rateLimiter(10);
+		Quota quota = new Quota("test", 1, 1);
+		for (int i = 0; i < 10; i++) {
+			rateLimiter.tryAcquire(quota, "client" + i);
+		}
+
+		this.now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+		assertThat(rateLimiter.tryAcquire(quota, "newcomer")).isZero();
+		assertThat(rateLimiter.size()).isEqualTo(1);
+	}
+
+	private RateLimiter rateLimiter(int maxKeys) {
+		RateLimiter rateLimiter = new RateLimiter(maxKeys);
+		rateLimiter.setNanoClock(this.now::get);
+		return rateLimiter;
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.imolczek.training.spring.springsecuritysample.security.revocation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+class RevocationListTests {
+
+	private static final Instant NOW = Instant.ofEpochSecond(1583056800);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void revokesTokensById() {
+		RevocationList revocationList = new RevocationList(100, 0.01);
+		revocationList.revokeToken("jti-1", NOW.plusSeconds(300));
+
+		assertThat(revocationList.isRevoked(jwt("jti-1", "alice", NOW))).isTrue();
+		assertThat(revocationList.isRevoked(jwt("jti-2", "alice", NOW))).isFalse();
+
+		revocationList.reinstateToken("jti-1");
+		assertThat(revocationList.isRevoked(jwt("jti-1", "alice", NOW))).isFalse();
+	}
+
+	@Test
+	void revokesTheTokensOfASubjectIssuedUpToTheRevocation() {
+		RevocationList revocationList = new RevocationList(100, 0.01);
+		revocationList.revokeSubject("alice", NOW, NOW.plusSeconds(300));
+
+		assertThat(revocationList.isRevoked(jwt("jti-1", "alice", NOW.minusSeconds(10)))).isTrue();
+		assertThat(revocationList.isRevoked(jwt("jti-2", "alice", NOW.plusSeconds(10)))).isFalse();
+		assertThat(revocationList.isRevoked(jwt("jti-3", "bob", NOW.minusSeconds(10)))).isFalse();
+	}
+
+	@Test
+	void prunesExpiredEntriesAndGrowsBeyondItsExpectedSize() {
+		RevocationList revocationList = new RevocationList(10, 0.01);
+		for (int i = 0; i < 100; i++) {
+			revocationList.revokeToken("jti-" + i, NOW.plusSeconds(i < 50 ? 60 : 600));
+		}
+		assertThat(revocationList.isRevoked(jwt("jti-0", "alice", NOW))).isTrue();
+		assertThat(revocationList.isRevoked(jwt("jti-99", "alice", NOW))).isTrue();
+
+		assertThat(revocationList.prune(NOW.plusSeconds(60))).isEqualTo(50);
+		assertThat(revocationList.size()).isEqualTo(50);
+		assertThat(revocationList.isRevoked(jwt("jti-0", "alice", NOW))).isFalse();
+		assertThat(revocationList.isRevoked(jwt("jti-99", "alice", NOW))).isTrue();
+	}
+
+	@Test
+	void feedAppliesAppendedLinesOnly() throws Exception {
+		Path file = this.directory.resolve("revocations.txt");
+		RevocationList revocationList = new RevocationList(100, 0.01);
+		RevocationFeed feed = new RevocationFeed(file, revocationList, Duration.ofMinutes(1), Duration.ofMinutes(1));
+
+		append(file, "# comment\nrevoke-token jti-1 " + NOW.plusSeconds(300).getEpochSecond() + "\nrevoke-token jti-2");
+		feed.poll();
+		assertThat(revocationList.isRevoked(jwt("jti-1", "alice", NOW))).isTrue();
+		assertThat(revocationList.getTokenCount()).isEqualTo(1);
+
+		// Completes the line left unfinished by the previous write
+		append(file, " " + NOW.plusSeconds(300).getEpochSecond() + "\nreinstate-token jti-1\nrevoke-everything\n");
+		feed.poll();
+		assertThat(revocationList.isRevoked(jwt("jti-1", "alice", NOW))).isFalse();
+		assertThat(revocationList.isRevoked(jwt("jti-2", "alice", NOW))).isTrue();
+		assertThat(feed.getAppliedCount()).isEqualTo(3);
+		assertThat(feed.getMalformedCount()).isEqualTo(1);
+	}
+
+	private static void append(Path file, String lines) throws Exception {
+		Files.write(file, lines.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	private static Jwt jwt(String jti, String subject, Instant issuedAt) {
+		return Jwt.withTokenValue("token").header("alg", "RS256")
+				.jti(jti).subject(subject).issuedAt(issuedAt).expiresAt(issuedAt.plusSeconds(300)).build();
+	}
+
+}
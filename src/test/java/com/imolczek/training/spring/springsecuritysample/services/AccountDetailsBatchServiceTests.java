@@ -0,0 +1,40 @@
+package com.imolczek.training.spring.springsecuritysample.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.BatchTooLargeException;
+import com.imolczek.training.spring.springsecuritysample.exceptions.InvalidBatchException;
+
+class AccountDetailsBatchServiceTests {
+
+	@Test
+	void keepsTheDistinctAccountNumbersInTheRequestedOrder() {
+		assertThat(AccountDetailsBatchService.distinct(Arrays.asList("FR0002", "FR0001", "FR0002"), 2))
+				.containsExactly("FR0002", "FR0001");
+	}
+
+	@Test
+	void rejectsMissingOrBlankAccountNumbers() {
+		assertThatThrownBy(() -> AccountDetailsBatchService.distinct(null, 10))
+				.isInstanceOf(InvalidBatchException.class);
+		assertThatThrownBy(() -> AccountDetailsBatchService.distinct(Collections.emptyList(), 10))
+				.isInstanceOf(InvalidBatchException.class);
+		assertThatThrownBy(() -> AccountDetailsBatchService.distinct(Arrays.asList("FR0001", null), 10))
+				.isInstanceOf(InvalidBatchException.class);
+		assertThatThrownBy(() -> AccountDetailsBatchService.distinct(Arrays.asList("FR0001", " "), 10))
+				.isInstanceOf(InvalidBatchException.class);
+	}
+
+	@Test
+	void rejectsBatchesOverTheMaximumSize() {
+		assertThatThrownBy(() -> AccountDetailsBatchService.distinct(Arrays.asList("FR0001", "FR0002", "FR0003"), 2))
+				.isInstanceOf(BatchTooLargeException.class);
+	}
+
+}
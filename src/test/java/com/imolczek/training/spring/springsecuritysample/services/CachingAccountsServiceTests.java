@@ -0,0 +1,189 @@
+package com.imolczek.training.spring.springsecuritysample.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+
+class CachingAccountsServiceTests {
+
+	private static final Instant NOW = Instant.parse("2020-03-01T10:00:00Z");
+
+	private final AtomicInteger calls = new AtomicInteger();
+
+	private volatile String holderOfFR0001 = "alice";
+
+	private volatile CountDownLatch release;
+
+	@Test
+	void servesListsAndDetailsFromTheCacheUntilTheTtl() throws Exception {
+		CachingAccountsService service = service();
+
+		service.list("alice");
+		service.details("FR0001", "alice");
+		service.list("alice");
+		service.details("FR0001", "alice");
+		assertThat(this.calls).hasValue(2);
+		assertThat(service.getHitCount()).isEqualTo(2);
+
+		service.setClock(clockAt(NOW.plusSeconds(30)));
+		service.list("alice");
+		assertThat(this.calls).hasValue(3);
+	}
+
+	@Test
+	void servesPagesStreamsAndOwnershipFromTheCachedList() {
+		CachingAccountsService service = new CachingAccountsService(new AccountsService() {
+
+			@Override
+			public List<AccountResource> list(String accountHolderId) {
+				calls.incrementAndGet();
+				return Arrays.asList(account("FR0003"), account("FR0001"), account("FR0002"));
+			}
+
+			@Override
+			public AccountResource details(String accountNumber, String accountHolderId) {
+				throw new UnsupportedOperationException();
+			}
+
+		}, 100, 100, Duration.ofSeconds(30));
+
+		AccountsPage first = service.page("alice", null, 2);
+		AccountsPage second = service.page("alice", first.getNextAfter(), 2);
+		assertThat(first.getAccounts()).extracting(AccountResource::getAccountNumber).containsExactly("FR0001", "FR0002");
+		assertThat(second.getAccounts()).extracting(AccountResource::getAccountNumber).containsExactly("FR0003");
+		assertThat(second.getNextAfter()).isNull();
+		assertThat(service.getHitCount()).isEqualTo(1);
+
+		assertThat(service.stream("alice")).hasSize(3);
+		assertThat(service.heldAmong(Arrays.asList("FR0002", "FR0009"), "alice")).containsExactly("FR0002");
+		assertThat(this.calls).hasValue(1);
+
+		service.invalidate("alice");
+		service.page("alice", null, 2);
+		assertThat(this.calls).hasValue(2);
+	}
+
+	@Test
+	void replaysDenialsFromTheCache() {
+		CachingAccountsService service = service();
+
+		assertThatThrownBy(() -> service.details("FR0001", "bob")).isInstanceOf(WrongAccountHolderException.class);
+		assertThatThrownBy(() -> service.details("FR0001", "bob")).isInstanceOf(WrongAccountHolderException.class);
+		assertThat(this.calls).hasValue(1);
+	}
+
+	@Test
+	void dropsBothHoldersWhenAnAccountChangesHands() throws Exception {
+		CachingAccountsService service = service();
+		service.details("FR0001", "alice");
+		assertThatThrownBy(() -> service.details("FR0001", "bob")).isInstanceOf(WrongAccountHolderException.class);
+
+		this.holderOfFR0001 = "bob";
+		service.invalidate(new AccountChangedEvent(this, "FR0001", "bob", "alice"));
+
+		assertThat(service.details("FR0001", "bob").getAccountNumber()).isEqualTo("FR0001");
+		assertThatThrownBy(() -> service.details("FR0001", "alice")).isInstanceOf(WrongAccountHolderException.class);
+		assertThat(service.getInvalidationCount()).isEqualTo(2);
+		assertThat(this.calls).hasValue(4);
+	}
+
+	@Test
+	void coalescesConcurrentLoadsOfTheSameEntry() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		this.release = new CountDownLatch(1);
+		CachingAccountsService service = new CachingAccountsService(new AccountsService() {
+
+			@Override
+			public List<AccountResource> list(String accountHolderId) {
+				calls.incrementAndGet();
+				started.countDown();
+				await(release);
+				return Collections.singletonList(account("FR0001"));
+			}
+
+			@Override
+			public AccountResource details(String accountNumber, String accountHolderId) {
+				throw new UnsupportedOperationException();
+			}
+
+		}, 100, 100, Duration.ofSeconds(30));
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<List<AccountResource>> first = executor.submit(() -> service.list("alice"));
+			started.await(5, TimeUnit.SECONDS);
+			Future<List<AccountResource>> second = executor.submit(() -> service.list("alice"));
+			while (service.getCoalescedCount() == 0 && !second.isDone()) {
+				Thread.sleep(1);
+			}
+			this.release.countDown();
+
+			assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(first.get(5, TimeUnit.SECONDS));
+			assertThat(this.calls).hasValue(1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private CachingAccountsService service() {
+		CachingAccountsService service = new CachingAccountsService(new AccountsService() {
+
+			@Override
+			public List<AccountResource> list(String accountHolderId) {
+				calls.incrementAndGet();
+				return accountHolderId.equals(holderOfFR0001)
+						? Collections.singletonList(account("FR0001"))
+						: Collections.emptyList();
+			}
+
+			@Override
+			public AccountResource details(String accountNumber, String accountHolderId) throws WrongAccountHolderException {
+				calls.incrementAndGet();
+				if (!accountHolderId.equals(holderOfFR0001)) {
+					throw WrongAccountHolderException.INSTANCE;
+				}
+				return account(accountNumber);
+			}
+
+		}, 100, 100, Duration.ofSeconds(30));
+		service.setClock(clockAt(NOW));
+		return service;
+	}
+
+	private static AccountResource account(String accountNumber) {
+		AccountResource account = new AccountResource();
+		account.setAccountNumber(accountNumber);
+		return account;
+	}
+
+	private static Clock clockAt(Instant instant) {
+		return Clock.fixed(instant, ZoneOffset.UTC);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
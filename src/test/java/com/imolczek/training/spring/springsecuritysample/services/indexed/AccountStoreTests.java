@@ -0,0 +1,131 @@
+package com.imolczek.training.spring.springsecuritysample.services.indexed;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.imolczek.training.spring.springsecuritysample.model.Account;
+
+class AccountStoreTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void indexesTheStoreFileByNumberAndByHolder() throws Exception {
+		Path file = this.directory.resolve("accounts.csv");
+		Files.write(file, Arrays.asList("# accounts", "", "FR0003,alice", "FR0001,alice", "FR0002,bob", "FR0002,alice"),
+				StandardCharsets.UTF_8);
+
+		AccountStore store = AccountStore.load(file);
+		assertThat(store.size()).isEqualTo(3);
+		// The last line of an account wins
+		assertThat(store.findByNumber("FR0002").getAccountHolderId()).isEqualTo("alice");
+		assertThat(store.findByHolder("alice")).extracting(Account::getAccountNumber)
+				.containsExactly("FR0001", "FR0002", "FR0003");
+		assertThat(store.findByHolder("bob")).isEmpty();
+		assertThat(store.isHeldBy("FR0001", "alice")).isTrue();
+		assertThat(store.isHeldBy("FR0001", "bob")).isFalse();
+		assertThat(store.isHeldBy("FR9999", "alice")).isFalse();
+		assertThat(store.findByNumber("FR9999")).isNull();
+	}
+
+	@Test
+	void savedAccountsMoveBetweenHoldersAndSurviveAReload() throws Exception {
+		Path file = this.directory.resolve("accounts.csv");
+		AccountStore store = AccountStore.load(file);
+		assertThat(store.size()).isZero();
+
+		store.save(account("FR0001", "alice"));
+		store.save(account("FR0002", "alice"));
+		store.save(account("FR0001", "bob"));
+		assertThat(store.findByHolder("alice")).extracting(Account::getAccountNumber).containsExactly("FR0002");
+		assertThat(store.findByHolder("bob")).extracting(Account::getAccountNumber).containsExactly("FR0001");
+
+		AccountStore reloaded = AccountStore.load(file);
+		assertThat(reloaded.findByHolder("alice")).extracting(Account::getAccountNumber).containsExactly("FR0002");
+		assertThat(reloaded.isHeldBy("FR0001", "bob")).isTrue();
+	}
+
+	@Test
+	void rejectsMalformedLines() throws Exception {
+		Path file = this.directory.resolve("accounts.csv");
+		Files.write(file, Collections.singletonList("FR0001"), StandardCharsets.UTF_8);
+
+		assertThatThrownBy(() -> AccountStore.load(file)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void versionsFollowTheStoreFileAcrossReloads() throws Exception {
+		Path file = this.directory.resolve("accounts.csv");
+		Files.write(file, Arrays.asList("# accounts", "FR0001,alice", "FR0002,alice", "FR0003,bob"), StandardCharsets.UTF_8);
+
+		AccountStore store = AccountStore.load(file);
+		assertThat(store.findByNumber("FR0001").getVersion()).isEqualTo(2);
+		assertThat(store.holderVersion("alice")).isEqualTo(3);
+		assertThat(store.holderVersion("bob")).isEqualTo(4);
+		assertThat(store.holderVersion("carol")).isZero();
+
+		// Moving an account changes both holders' versions
+		store.save(account("FR0002", "bob"));
+		assertThat(store.findByNumber("FR0002").getVersion()).isEqualTo(5);
+		assertThat(store.holderVersion("alice")).isEqualTo(5);
+		assertThat(store.holderVersion("bob")).isEqualTo(5);
+
+		AccountStore reloaded = AccountStore.load(file);
+		assertThat(reloaded.findByNumber("FR0002").getVersion()).isEqualTo(5);
+		assertThat(reloaded.holderVersion("alice")).isEqualTo(5);
+		assertThat(reloaded.findByHolder("alice")).extracting(Account::getAccountNumber).containsExactly("FR0001");
+		assertThat(reloaded.findByHolder("bob")).extracting(Account::getAccountNumber).containsExactly("FR0002", "FR0003");
+	}
+
+	@Test
+	void versionsCarryTheEpochOfTheStoreFile() throws Exception {
+		Path file = this.directory.resolve("accounts.csv");
+		AccountStore store = AccountStore.load(file);
+		store.save(account("FR0001", "alice"));
+
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		assertThat(lines.get(0)).startsWith("# epoch ");
+		long epoch = Long.parseLong(lines.get(0).substring("# epoch ".length())) << 32;
+		assertThat(store.findByNumber("FR0001").getVersion()).isEqualTo(epoch | 2);
+		assertThat(AccountStore.load(file).holderVersion("alice")).isEqualTo(epoch | 2);
+
+		// A regenerated file with the same accounts but a new epoch gets new versions
+		Files.write(file, Arrays.asList("# epoch 42", "FR0001,alice"), StandardCharsets.UTF_8);
+		assertThat(AccountStore.load(file).holderVersion("alice")).isEqualTo(42L << 32 | 2);
+	}
+
+	@Test
+	void generatedStoreFilesStartWithANewEpoch() throws Exception {
+		Path file = this.directory.resolve("accounts.csv");
+		AccountsDataGenerator.generate(file, 2, 1, new Random(42));
+		long firstVersion = AccountStore.load(file).findByNumber("FR000000000000").getVersion();
+
+		// Same seed, same accounts, but other versions
+		AccountsDataGenerator.generate(file, 2, 1, new Random(42));
+		AccountStore regenerated = AccountStore.load(file);
+		assertThat(Files.readAllLines(file, StandardCharsets.UTF_8).get(0)).startsWith("# epoch ");
+		assertThat(regenerated.size()).isEqualTo(2);
+		assertThat(regenerated.findByNumber("FR000000000000").getVersion() >>> 32).isNotZero();
+		assertThat(regenerated.findByNumber("FR000000000000").getVersion()).isNotEqualTo(firstVersion);
+	}
+
+	private static Account account(String accountNumber, String accountHolderId) {
+		Account account = new Account();
+		account.setAccountNumber(accountNumber);
+		account.setAccountHolderId(accountHolderId);
+		return account;
+	}
+
+}
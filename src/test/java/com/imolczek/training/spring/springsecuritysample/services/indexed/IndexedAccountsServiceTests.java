@@ -0,0 +1,35 @@
+package com.imolczek.training.spring.springsecuritysample.services.indexed;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.imolczek.training.spring.springsecuritysample.exceptions.WrongAccountHolderException;
+import com.imolczek.training.spring.springsecuritysample.interfaces.rest.resources.AccountResource;
+
+class IndexedAccountsServiceTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void onlyServesTheAccountsOfTheirHolder() throws Exception {
+		Path file = this.directory.resolve("accounts.csv");
+		Files.write(file, Arrays.asList("FR0002,alice", "FR0001,alice", "FR0003,bob"), StandardCharsets.UTF_8);
+		IndexedAccountsService service = new IndexedAccountsService(AccountStore.load(file));
+
+		assertThat(service.list("alice")).extracting(AccountResource::getAccountNumber).containsExactly("FR0001", "FR0002");
+		assertThat(service.details("FR0003", "bob").getAccountNumber()).isEqualTo("FR0003");
+		// Someone else's account and an unknown account are denied alike
+		assertThatThrownBy(() -> service.details("FR0003", "alice")).isInstanceOf(WrongAccountHolderException.class);
+		assertThatThrownBy(() -> service.details("FR9999", "alice")).isInstanceOf(WrongAccountHolderException.class);
+	}
+
+}